@@ -0,0 +1,119 @@
+package com.azati.file_scanner;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Запуск: mvn -Pbenchmark verify
+// Выборочно: mvn -Pbenchmark verify -Djmh.args="ScanBenchmark.maskOnlyScan -p shape=SKEWED -rf json"
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ScanBenchmark {
+    private static final long SEED = 42L;
+
+    @Param({"DEEP", "WIDE", "SKEWED", "TINY_FILES", "HUGE_TEXT"})
+    public TreeGenerator.Shape shape;
+
+    @Param({"1", "4", "auto", "adaptive"})
+    public String threads;
+
+    private Path root;
+    // Кэш с нулевым TTL: каждый вызов — настоящее сканирование
+    private FileScanService coldService;
+    // Кэш с большим TTL: измеряем попадание в кэш
+    private FileScanService cachedService;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        Path baseDir = Paths.get(System.getProperty("bench.tree.dir", "target/bench-trees"));
+        root = new TreeGenerator(SEED).generate(baseDir, shape);
+
+        coldService = newService(0);
+        cachedService = newService(TimeUnit.HOURS.toMillis(1));
+        cachedService.scan(root.toString(), "*", threads, null, null, null, null, null);
+        // cacheSubsumedHit должен сужать результат "*", а не сканировать и попадать потом по точному ключу
+        ScanCache cache = (ScanCache) ReflectionTestUtils.getField(cachedService, "scanCache");
+        cachedService.scan(root.toString(), "*.csv", threads, 1L, null, null, null, null);
+        if (cache.stats().subsumedHits() != 1 || cache.stats().entries() != 1) {
+            throw new IllegalStateException("Narrower query was not served from the cached full scan: " + cache.stats());
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        coldService.shutdown();
+        cachedService.shutdown();
+    }
+
+    private static FileScanService newService(long cacheTtlMillis) {
+        ScanCache cache = new ScanCache();
+        ReflectionTestUtils.setField(cache, "cacheTtlMillis", cacheTtlMillis);
+        ReflectionTestUtils.setField(cache, "maxWeight", Long.MAX_VALUE);
+        ConcurrencyTuner tuner = new ConcurrencyTuner();
+        ReflectionTestUtils.setField(tuner, "intervalMillis", 100L);
+        tuner.start();
+        int processors = Runtime.getRuntime().availableProcessors();
+        return new FileScanService(cache, new FileIndex(), new ContentIndex(), tuner, new ScanMetrics(new SimpleMeterRegistry()), processors, 8, 0, 16, 8, 1024);
+    }
+
+    @Benchmark
+    public List<String> fullScan() throws Exception {
+        return coldService.scan(root.toString(), "*", threads, null, null, null, null, null);
+    }
+
+    @Benchmark
+    public List<String> maskOnlyScan() throws Exception {
+        return coldService.scan(root.toString(), "*.log", threads, null, null, null, null, null);
+    }
+
+    @Benchmark
+    public List<String> containsTextScan() throws Exception {
+        return coldService.scan(root.toString(), "*", threads, null, null, null, null, TreeGenerator.NEEDLE);
+    }
+
+    @Benchmark
+    public List<String> limitScan() throws Exception {
+        return coldService.scan(null, root.toString(), "*", threads, null, null, null, null, null, ScanQuery.WalkOptions.NONE, 100, null, null);
+    }
+
+    @Benchmark
+    public List<String> topKBySizeScan() throws Exception {
+        return coldService.scan(null, root.toString(), "*", threads, null, null, null, null, null, ScanQuery.WalkOptions.NONE, null, 50, "size");
+    }
+
+    @Benchmark
+    public ScanAggregate.Summary aggregateScan() throws Exception {
+        return coldService.aggregate(null, root.toString(), "*", threads, null, null, null, null, null, ScanQuery.WalkOptions.NONE);
+    }
+
+    @Benchmark
+    public List<String> cacheHit() throws Exception {
+        return cachedService.scan(root.toString(), "*", threads, null, null, null, null, null);
+    }
+
+    @Benchmark
+    public List<String> cacheSubsumedHit() throws Exception {
+        return cachedService.scan(root.toString(), "*.csv", threads, 1L, null, null, null, null);
+    }
+}
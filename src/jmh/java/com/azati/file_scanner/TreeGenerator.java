@@ -0,0 +1,115 @@
+package com.azati.file_scanner;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+// Генератор воспроизводимых деревьев для бенчмарков: одинаковый seed даёт одинаковое дерево.
+// Готовое дерево помечается файлом-маркером и при повторном запуске не пересоздаётся.
+public class TreeGenerator {
+    public static final String NEEDLE = "benchmark-needle";
+    private static final String MARKER = ".tree-complete";
+    private static final String[] EXTENSIONS = {".txt", ".log", ".csv", ".json", ".bin", ".dat"};
+
+    public enum Shape {
+        // Длинные цепочки вложенных директорий
+        DEEP,
+        // Много директорий на одном уровне
+        WIDE,
+        // Одна поддиректория содержит почти все файлы
+        SKEWED,
+        // Много маленьких файлов
+        TINY_FILES,
+        // Несколько больших текстовых файлов
+        HUGE_TEXT
+    }
+
+    private final Random random;
+
+    public TreeGenerator(long seed) {
+        this.random = new Random(seed);
+    }
+
+    public Path generate(Path baseDir, Shape shape) throws IOException {
+        Path root = baseDir.resolve(shape.name().toLowerCase());
+        if (Files.exists(root.resolve(MARKER))) {
+            return root;
+        }
+        Files.createDirectories(root);
+        switch (shape) {
+            case DEEP -> {
+                for (int chain = 0; chain < 20; chain++) {
+                    Path dir = root.resolve("chain" + chain);
+                    for (int depth = 0; depth < 40; depth++) {
+                        dir = dir.resolve("level" + depth);
+                        writeFiles(dir, 10, 2048);
+                    }
+                }
+            }
+            case WIDE -> {
+                for (int i = 0; i < 2000; i++) {
+                    writeFiles(root.resolve("dir" + i), 8, 2048);
+                }
+            }
+            case SKEWED -> {
+                for (int i = 0; i < 50; i++) {
+                    writeFiles(root.resolve("small" + i), 5, 2048);
+                }
+                Path archive = root.resolve("archive");
+                for (int i = 0; i < 100; i++) {
+                    writeFiles(archive.resolve("part" + i), 150, 2048);
+                }
+            }
+            case TINY_FILES -> {
+                for (int i = 0; i < 100; i++) {
+                    writeFiles(root.resolve("dir" + i), 500, 64);
+                }
+            }
+            case HUGE_TEXT -> {
+                for (int i = 0; i < 8; i++) {
+                    writeHugeText(root.resolve("huge" + i + ".log"), 64L * 1024 * 1024, i % 2 == 0);
+                }
+            }
+        }
+        Files.createFile(root.resolve(MARKER));
+        return root;
+    }
+
+    private void writeFiles(Path dir, int count, int maxSize) throws IOException {
+        Files.createDirectories(dir);
+        for (int i = 0; i < count; i++) {
+            String extension = EXTENSIONS[random.nextInt(EXTENSIONS.length)];
+            int size = 1 + random.nextInt(maxSize);
+            StringBuilder content = new StringBuilder(size + NEEDLE.length());
+            while (content.length() < size) {
+                content.append((char) ('a' + random.nextInt(26)));
+            }
+            // Примерно в каждом десятом файле есть искомая строка
+            if (random.nextInt(10) == 0) {
+                content.insert(random.nextInt(content.length()), NEEDLE);
+            }
+            Files.writeString(dir.resolve("file" + i + extension), content);
+        }
+    }
+
+    private void writeHugeText(Path file, long size, boolean withNeedleAtEnd) throws IOException {
+        byte[] line = new byte[128];
+        try (OutputStream out = Files.newOutputStream(file)) {
+            long written = 0;
+            while (written < size) {
+                for (int i = 0; i < line.length - 1; i++) {
+                    line[i] = (byte) ('a' + random.nextInt(26));
+                }
+                line[line.length - 1] = '\n';
+                out.write(line);
+                written += line.length;
+            }
+            if (withNeedleAtEnd) {
+                out.write(NEEDLE.getBytes(StandardCharsets.UTF_8));
+            }
+        }
+    }
+}
@@ -0,0 +1,422 @@
+package com.azati.file_scanner;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Режим координатора: один запрос по нескольким корням. Каждый корень уходит узлу,
+// который его обслуживает (file.scanner.cluster.nodes), не назначенные корни сканируются локально.
+// Все шарды запускаются сразу, поэтому задержка определяется самым медленным из них.
+// Шарды отдают отсортированные списки, координатор сливает их на лету через кучу.
+@Component
+public class ClusterCoordinator {
+    private final FileScanService fileScanService;
+    private final JsonFactory jsonFactory = new JsonFactory();
+
+    // Формат: корень=http://узел:порт через запятую
+    @Value("${file.scanner.cluster.nodes:}")
+    private String nodesConfig;
+    @Value("${file.scanner.cluster.timeout-ms:600000}")
+    private long timeoutMillis;
+
+    private final Map<Path, String> nodesByRoot = new LinkedHashMap<>();
+    private final ConcurrentHashMap<String, DistributedScan> activeScans = new ConcurrentHashMap<>();
+    private ExecutorService executor;
+    private HttpClient httpClient;
+
+    public record ShardFailure(String root, String node, String error) {
+    }
+
+    public ClusterCoordinator(FileScanService fileScanService) {
+        this.fileScanService = fileScanService;
+    }
+
+    @PostConstruct
+    public void start() {
+        for (String mapping : nodesConfig.split(",")) {
+            int separator = mapping.indexOf('=');
+            if (separator > 0) {
+                nodesByRoot.put(Paths.get(mapping.substring(0, separator).trim()).toAbsolutePath().normalize(),
+                        mapping.substring(separator + 1).trim().replaceAll("/+$", ""));
+            }
+        }
+        AtomicInteger threadNumber = new AtomicInteger();
+        executor = Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r, "cluster-coordinator-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        httpClient = HttpClient.newBuilder()
+                .connectTimeout(Duration.ofSeconds(5))
+                .executor(executor)
+                .build();
+    }
+
+    @PreDestroy
+    public void stop() {
+        activeScans.values().forEach(DistributedScan::cancel);
+        executor.shutdownNow();
+    }
+
+    // Запускает все шарды; пути читаются из результата через next()
+    public DistributedScan start(String scanId, List<String> roots, String mask, String threads,
+                                 Long minSizeKB, Long maxSizeKB,
+                                 String modifiedAfter, String modifiedBefore,
+                                 String containsText, ScanQuery.WalkOptions walk) {
+        if (roots.isEmpty()) {
+            throw new IllegalArgumentException("At least one path is required.");
+        }
+        // Ошибки в параметрах ловим здесь, а не отдельно на каждом узле
+        ScanQuery query = ScanQuery.of(roots.get(0), mask, minSizeKB, maxSizeKB, modifiedAfter, modifiedBefore, containsText, walk);
+        if (scanId == null || scanId.isBlank()) {
+            scanId = UUID.randomUUID().toString();
+        }
+        Map<String, String> params = new LinkedHashMap<>();
+        params.put("mask", mask);
+        params.put("threads", threads);
+        params.put("minSizeKB", minSizeKB != null ? minSizeKB.toString() : null);
+        params.put("maxSizeKB", maxSizeKB != null ? maxSizeKB.toString() : null);
+        params.put("modifiedAfter", modifiedAfter);
+        params.put("modifiedBefore", modifiedBefore);
+        params.put("containsText", query.containsText);
+        params.put("minDepth", walk.minDepth() != null ? walk.minDepth().toString() : null);
+        params.put("maxDepth", walk.maxDepth() != null ? walk.maxDepth().toString() : null);
+        params.put("followLinks", String.valueOf(walk.followLinks()));
+        params.put("sameFileSystem", String.valueOf(walk.sameFileSystem()));
+        DistributedScan scan = new DistributedScan(scanId);
+        if (activeScans.putIfAbsent(scanId, scan) != null) {
+            throw new IllegalArgumentException("Scan with id " + scanId + " is already running.");
+        }
+        for (int i = 0; i < roots.size(); i++) {
+            String root = roots.get(i);
+            // У каждого шарда свой id: два корня могут попасть на один узел
+            String shardId = scanId + "-" + i;
+            String node = nodeFor(Paths.get(root).toAbsolutePath().normalize());
+            scan.shards.add(node == null
+                    ? new LocalShard(scan, root, shardId, mask, threads, minSizeKB, maxSizeKB, modifiedAfter, modifiedBefore, containsText, walk)
+                    : new RemoteShard(root, node, shardId, params, walk.excludes()));
+        }
+        System.out.println("Distributed scan " + scanId + " started over " + roots.size() + " root(s).");
+        return scan;
+    }
+
+    public boolean cancel(String scanId) {
+        DistributedScan scan = activeScans.get(scanId);
+        if (scan == null) {
+            return false;
+        }
+        scan.cancel();
+        return true;
+    }
+
+    // Узел с самым длинным совпавшим корнем или null (сканируем сами)
+    private String nodeFor(Path root) {
+        Path best = null;
+        for (Path configured : nodesByRoot.keySet()) {
+            if (root.startsWith(configured) && (best == null || configured.getNameCount() > best.getNameCount())) {
+                best = configured;
+            }
+        }
+        return best != null ? nodesByRoot.get(best) : null;
+    }
+
+    public class DistributedScan {
+        final String id;
+        final long startedAt = System.currentTimeMillis();
+        // Отмена может прийти, пока шарды ещё добавляются
+        private final List<Shard> shards = new CopyOnWriteArrayList<>();
+        private final List<ShardFailure> failures = new ArrayList<>();
+        private PriorityQueue<Cursor> heap;
+        private String lastPath;
+        private long count;
+        // Выставляется и отменой: шард, ещё не создавший сессию, проверяет его при старте
+        volatile boolean interrupted = false;
+
+        DistributedScan(String id) {
+            this.id = id;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        // Следующий путь в общем порядке или null. Повторы (пересекающиеся корни) пропускаются.
+        public String next() {
+            if (heap == null) {
+                heap = new PriorityQueue<>((a, b) -> ScanResults.comparePaths(a.current, b.current));
+                for (Shard shard : shards) {
+                    advance(new Cursor(shard));
+                }
+            }
+            while (!interrupted && !heap.isEmpty()) {
+                Cursor cursor = heap.poll();
+                String path = cursor.current;
+                advance(cursor);
+                if (!path.equals(lastPath)) {
+                    lastPath = path;
+                    count++;
+                    return path;
+                }
+            }
+            return null;
+        }
+
+        private void advance(Cursor cursor) {
+            try {
+                cursor.current = cursor.shard.next();
+                if (cursor.current != null) {
+                    heap.add(cursor);
+                }
+            } catch (Exception e) {
+                String message = e instanceof ExecutionException && e.getCause() != null ? e.getCause().toString() : e.toString();
+                System.err.println("Shard " + cursor.shard.root() + " on " + cursor.shard.node() + " failed: " + message);
+                failures.add(new ShardFailure(cursor.shard.root(), cursor.shard.node(), message));
+                cursor.shard.cancel();
+                if (e instanceof InterruptedException) {
+                    Thread.currentThread().interrupt();
+                    interrupted = true;
+                }
+            }
+        }
+
+        public long count() {
+            return count;
+        }
+
+        public List<ShardFailure> failures() {
+            return failures;
+        }
+
+        public void cancel() {
+            interrupted = true;
+            shards.forEach(Shard::cancel);
+        }
+
+        // Вызывается после выдачи всех путей или при обрыве ответа
+        public void finish() {
+            if (interrupted) {
+                shards.forEach(Shard::cancel);
+            }
+            shards.forEach(Shard::close);
+            activeScans.remove(id, this);
+        }
+    }
+
+    private static final class Cursor {
+        final Shard shard;
+        String current;
+
+        Cursor(Shard shard) {
+            this.shard = shard;
+        }
+    }
+
+    private interface Shard {
+        String root();
+
+        String node();
+
+        // Следующий путь шарда по порядку или null; ждёт ответа узла
+        String next() throws Exception;
+
+        void cancel();
+
+        default void close() {
+        }
+    }
+
+    private final class LocalShard implements Shard {
+        private final String root;
+        private final String shardId;
+        private final CompletableFuture<ScanResults> results;
+        private Iterator<String> iterator;
+
+        LocalShard(DistributedScan scan, String root, String shardId, String mask, String threads, Long minSizeKB, Long maxSizeKB,
+                   String modifiedAfter, String modifiedBefore, String containsText, ScanQuery.WalkOptions walk) {
+            this.root = root;
+            this.shardId = shardId;
+            this.results = CompletableFuture.supplyAsync(() -> {
+                try {
+                    // interruptScan до регистрации сессии теряется: отмену, пришедшую раньше,
+                    // сессия узнаёт по флагу скана сразу после регистрации
+                    ScanResults found = fileScanService.scan(shardId, root, mask, threads, minSizeKB, maxSizeKB,
+                            modifiedAfter, modifiedBefore, containsText, walk, null, null, null, session -> {
+                                if (scan.interrupted) {
+                                    session.interrupt();
+                                }
+                            });
+                    // Нет корня — ошибка шарда, а не пустой результат: иначе неверный корень пропал бы молча
+                    if (found.isEmpty() && !fileScanService.directoryExists(root)) {
+                        throw new NoSuchFileException(root, null, "directory not found");
+                    }
+                    return found;
+                } catch (IOException e) {
+                    throw new IllegalStateException(e);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException(e);
+                }
+            }, executor);
+        }
+
+        public String root() {
+            return root;
+        }
+
+        public String node() {
+            return "local";
+        }
+
+        public String next() throws Exception {
+            if (iterator == null) {
+                iterator = results.get().iterator();
+            }
+            return iterator.hasNext() ? iterator.next() : null;
+        }
+
+        public void cancel() {
+            fileScanService.interruptScan(shardId);
+        }
+    }
+
+    private final class RemoteShard implements Shard {
+        private final String root;
+        private final String node;
+        private final String shardId;
+        private final CompletableFuture<HttpResponse<InputStream>> response;
+        private JsonParser parser;
+        private boolean done;
+
+        RemoteShard(String root, String node, String shardId, Map<String, String> params, List<String> excludes) {
+            this.root = root;
+            this.node = node;
+            this.shardId = shardId;
+            StringBuilder uri = new StringBuilder(node).append("/scan?path=").append(encode(root))
+                    .append("&scanId=").append(encode(shardId));
+            params.forEach((name, value) -> {
+                if (value != null) {
+                    uri.append('&').append(name).append('=').append(encode(value));
+                }
+            });
+            // Каждый шаблон отдельным параметром, как их принимает /scan
+            for (String exclude : excludes) {
+                uri.append("&exclude=").append(encode(exclude));
+            }
+            HttpRequest request = HttpRequest.newBuilder(URI.create(uri.toString()))
+                    .timeout(Duration.ofMillis(timeoutMillis))
+                    .GET()
+                    .build();
+            this.response = httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofInputStream());
+        }
+
+        public String root() {
+            return root;
+        }
+
+        public String node() {
+            return node;
+        }
+
+        public String next() throws Exception {
+            if (done) {
+                return null;
+            }
+            if (parser == null) {
+                HttpResponse<InputStream> result = response.get();
+                // Пустой результат узел отдаёт как 404 с сообщением; отсутствие корня — тоже 404,
+                // но его сообщение начинается с DIRECTORY_NOT_FOUND, и это ошибка шарда
+                if (result.statusCode() == 404) {
+                    String body = new String(result.body().readAllBytes(), StandardCharsets.UTF_8);
+                    done = true;
+                    if (body.startsWith("[\"" + FileScanService.DIRECTORY_NOT_FOUND)) {
+                        throw new NoSuchFileException(root, null, "directory not found on " + node);
+                    }
+                    return null;
+                }
+                if (result.statusCode() != 200) {
+                    String body = new String(result.body().readAllBytes(), StandardCharsets.UTF_8);
+                    done = true;
+                    throw new IOException("HTTP " + result.statusCode() + ": " + body);
+                }
+                parser = jsonFactory.createParser(result.body());
+                if (parser.nextToken() != JsonToken.START_ARRAY) {
+                    throw new IOException("Unexpected response from " + node);
+                }
+            }
+            JsonToken token = parser.nextToken();
+            if (token == JsonToken.VALUE_STRING) {
+                return parser.getText();
+            }
+            done = true;
+            if (token != JsonToken.END_ARRAY) {
+                throw new IOException("Unexpected token " + token + " in response from " + node);
+            }
+            return null;
+        }
+
+        // Отмена на узле по id шарда; ответ не ждём
+        public void cancel() {
+            if (done) {
+                return;
+            }
+            HttpRequest request = HttpRequest.newBuilder(URI.create(node + "/scan/cancel?scanId=" + encode(shardId)))
+                    .timeout(Duration.ofSeconds(5))
+                    .GET()
+                    .build();
+            httpClient.sendAsync(request, HttpResponse.BodyHandlers.discarding());
+        }
+
+        public void close() {
+            try {
+                if (parser != null) {
+                    parser.close();
+                } else {
+                    response.thenAccept(result -> {
+                        try {
+                            result.body().close();
+                        } catch (IOException e) {
+                            // Соединение уже закрыто
+                        }
+                    });
+                }
+            } catch (IOException e) {
+                System.err.println("Failed to close response from " + node + ": " + e.getMessage());
+            }
+        }
+    }
+
+    private static String encode(String value) {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,162 @@
+package com.azati.file_scanner;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// Подбор параллельности для threads=adaptive. Раз в интервал меряем пропускную способность
+// сессии (файлы и директории в секунду плюс прочитанные байты) и двигаем её уровень
+// по схеме AIMD: рост — +1, заметное падение — умножение на 3/4, плато — без изменений.
+// Уровень ограничивает и задачи обхода в общем пуле, и рабочих проверки содержимого:
+// на медленном хранилище (NFS) узкое место — чтения, и расти должны именно они.
+// Лучший найденный уровень запоминается для корня и становится стартовым для следующих сканов.
+@Component
+public class ConcurrencyTuner {
+    private static final double TOLERANCE = 0.1;
+    // Прочитанные байты переводим в единицы работы: кусок ContentMatcher — примерно как один файл
+    private static final long BYTES_PER_UNIT = ContentMatcher.CHUNK_SIZE;
+    // Сколько корней помнить; давно не сканированные вытесняются
+    static final int MAX_REMEMBERED_ROOTS = 1024;
+
+    @Value("${file.scanner.adaptive.interval-ms:500}")
+    private long intervalMillis;
+
+    private final Map<Path, Integer> tunedLevels = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Path, Integer> eldest) {
+            return size() > MAX_REMEMBERED_ROOTS;
+        }
+    };
+    private final ConcurrentHashMap<ScanSession, Tuning> tunings = new ConcurrentHashMap<>();
+    private ScheduledExecutorService scheduler;
+
+    @PostConstruct
+    public void start() {
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "scan-concurrency-tuner");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::adjustAll, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    // Запомненный уровень для корня или половина максимума для первого скана
+    public int initialLevel(Path root, int maxLevel) {
+        Integer tuned;
+        synchronized (tunedLevels) {
+            tuned = tunedLevels.get(root);
+        }
+        return tuned != null ? Math.min(tuned, maxLevel) : Math.max(1, maxLevel / 2);
+    }
+
+    // maxWalkLevel — предел задач обхода (размер пула), maxContentLevel — рабочих содержимого
+    public void register(ScanSession session, int maxWalkLevel, int maxContentLevel) {
+        Tuning tuning = new Tuning(session, maxWalkLevel, session.contentStage != null ? maxContentLevel : 0);
+        tuning.apply(initialLevel(session.startPath, tuning.maxLevel));
+        tunings.put(session, tuning);
+    }
+
+    public void unregister(ScanSession session) {
+        Tuning tuning = tunings.remove(session);
+        // Скан короче интервала ничего не намерил
+        int bestLevel = tuning != null ? tuning.bestLevel : 0;
+        if (bestLevel > 0 && !session.interrupted) {
+            synchronized (tunedLevels) {
+                tunedLevels.put(session.startPath, bestLevel);
+            }
+            System.out.println("Adaptive scan " + session.id + " of " + session.startPath
+                    + ": best level " + bestLevel + ", final level " + tuning.level);
+        }
+    }
+
+    int rememberedRoots() {
+        synchronized (tunedLevels) {
+            return tunedLevels.size();
+        }
+    }
+
+    // Шаг подбора по заданной пропускной способности, без замера; для тестов
+    void adjust(ScanSession session, double throughput) {
+        Tuning tuning = tunings.get(session);
+        if (tuning != null) {
+            tuning.adjust(throughput);
+        }
+    }
+
+    private void adjustAll() {
+        for (Tuning tuning : tunings.values()) {
+            tuning.adjust();
+        }
+    }
+
+    // Состояние подбора одной сессии; меняется только потоком тюнера,
+    // level и bestLevel читает поток скана в unregister
+    private static final class Tuning {
+        private final ScanSession session;
+        private final int maxWalkLevel;
+        private final int maxContentLevel;
+        private final int maxLevel;
+        private volatile int level;
+        private long lastWork;
+        private long lastTick = System.nanoTime();
+        private double lastThroughput = -1;
+        private double bestThroughput;
+        private volatile int bestLevel;
+
+        Tuning(ScanSession session, int maxWalkLevel, int maxContentLevel) {
+            this.session = session;
+            this.maxWalkLevel = maxWalkLevel;
+            this.maxContentLevel = maxContentLevel;
+            this.maxLevel = Math.max(maxWalkLevel, maxContentLevel);
+        }
+
+        void adjust() {
+            long now = System.nanoTime();
+            long work = session.filesVisited.sum() + session.directoriesVisited.sum()
+                    + session.bytesRead.sum() / BYTES_PER_UNIT;
+            double throughput = (work - lastWork) * 1e9 / Math.max(1, now - lastTick);
+            lastWork = work;
+            lastTick = now;
+            adjust(throughput);
+        }
+
+        void adjust(double throughput) {
+            if (throughput > bestThroughput) {
+                bestThroughput = throughput;
+                bestLevel = level;
+            }
+            int next = level;
+            if (lastThroughput < 0 || throughput > lastThroughput * (1 + TOLERANCE)) {
+                next = level + 1;
+            } else if (throughput < lastThroughput * (1 - TOLERANCE)) {
+                next = level * 3 / 4;
+            }
+            lastThroughput = throughput;
+            apply(Math.max(1, Math.min(maxLevel, next)));
+        }
+
+        void apply(int newLevel) {
+            level = newLevel;
+            session.parallelism = Math.min(newLevel, maxWalkLevel);
+            if (maxContentLevel > 0) {
+                session.contentStage.setWorkers(Math.min(newLevel, maxContentLevel));
+            }
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package com.azati.file_scanner;
+
+import java.nio.file.Path;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Второй этап конвейера: проверка содержимого файлов, прошедших фильтры метаданных.
+// Обход директорий кладёт кандидатов в ограниченную очередь, а чтением файлов
+// занимается отдельный I/O-пул, поэтому медленные чтения не тормозят обход и наоборот.
+// Рабочий сессии — короткая задача: разбирает пачку кандидатов и отдаёт поток пулу,
+// а если работа осталась, встаёт в конец очереди пула. Так пул делится между сессиями
+// и никакая сессия не держит его потоки, пока идёт её обход.
+// Если очередь полна, обход ждёт через managedBlock — пул обхода на это время
+// может добавить запасной поток вместо заблокированного.
+public class ContentCheckStage {
+    private static final long POLL_TIMEOUT_MILLIS = 50;
+    // Сколько кандидатов рабочий разбирает, прежде чем вернуть поток
+    static final int BATCH_SIZE = 32;
+
+    private record Candidate(Path file, long size, long lastModified) {
+    }
+
+    private final ScanSession session;
+    private final ExecutorService contentPool;
+    // Сколько рабочих сессии может одновременно стоять в пуле; меняется ConcurrencyTuner
+    private volatile int maxWorkers;
+    private final AtomicInteger activeWorkers = new AtomicInteger();
+    private final BlockingQueue<Candidate> queue;
+    private final Object idle = new Object();
+    private volatile boolean started = false;
+
+    public ContentCheckStage(ScanSession session, ExecutorService contentPool, int workers, int queueSize) {
+        this.session = session;
+        this.contentPool = contentPool;
+        this.maxWorkers = Math.max(1, workers);
+        this.queue = new ArrayBlockingQueue<>(queueSize);
+    }
+
+    public void start() {
+        started = true;
+        startWorkers();
+    }
+
+    // Вызывается потоками обхода
+    public void submit(Path file, long size, long lastModified) {
+        Candidate candidate = new Candidate(file, size, lastModified);
+        if (!queue.offer(candidate)) {
+            try {
+                ForkJoinPool.managedBlock(new Offer(candidate));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+        startWorkers();
+    }
+
+    public int queued() {
+        return queue.size();
+    }
+
+    public int workers() {
+        return maxWorkers;
+    }
+
+    public void setWorkers(int workers) {
+        maxWorkers = Math.max(1, workers);
+        startWorkers();
+    }
+
+    // Обход закончен: ждём, пока рабочие разберут очередь
+    public void finishAndAwait() {
+        try {
+            ForkJoinPool.managedBlock(new ForkJoinPool.ManagedBlocker() {
+                @Override
+                public boolean block() throws InterruptedException {
+                    synchronized (idle) {
+                        if (!isReleasable()) {
+                            idle.wait(POLL_TIMEOUT_MILLIS);
+                        }
+                    }
+                    // Рабочий мог выйти между проверкой очереди и добавлением кандидата
+                    startWorkers();
+                    return isReleasable();
+                }
+
+                @Override
+                public boolean isReleasable() {
+                    return activeWorkers.get() == 0 && (queue.isEmpty() || session.stopped);
+                }
+            });
+        } catch (InterruptedException e) {
+            session.interrupt();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void startWorkers() {
+        if (!started) {
+            return;
+        }
+        while (!queue.isEmpty()) {
+            int current = activeWorkers.get();
+            if (current >= maxWorkers) {
+                return;
+            }
+            if (activeWorkers.compareAndSet(current, current + 1)) {
+                contentPool.execute(this::drainBatch);
+            }
+        }
+    }
+
+    private void drainBatch() {
+        try {
+            for (int i = 0; i < BATCH_SIZE; i++) {
+                if (session.stopped) {
+                    queue.clear();
+                    return;
+                }
+                Candidate candidate = queue.poll();
+                if (candidate == null) {
+                    return;
+                }
+                session.filter.checkContent(candidate.file(), candidate.size(), candidate.lastModified(), session);
+            }
+        } finally {
+            activeWorkers.decrementAndGet();
+            synchronized (idle) {
+                idle.notifyAll();
+            }
+            // Остаток — новой задачей в конец очереди пула, после рабочих других сессий
+            startWorkers();
+        }
+    }
+
+    // Ожидание места в очереди без захвата потока пула обхода
+    private final class Offer implements ForkJoinPool.ManagedBlocker {
+        private final Candidate candidate;
+        private boolean offered;
+
+        Offer(Candidate candidate) {
+            this.candidate = candidate;
+        }
+
+        @Override
+        public boolean block() throws InterruptedException {
+            while (!offered && !session.stopped) {
+                offered = queue.offer(candidate, POLL_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+            }
+            return true;
+        }
+
+        @Override
+        public boolean isReleasable() {
+            return offered || session.stopped || (offered = queue.offer(candidate));
+        }
+    }
+}
@@ -0,0 +1,872 @@
+package com.azati.file_scanner;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntConsumer;
+
+// Необязательный триграммный индекс содержимого для настроенных корней (как в инструментах поиска по коду).
+// Для каждого файла известны все его 3-байтовые последовательности; запрос containsText пересекает
+// списки файлов по триграммам искомой строки и отсекает остальные файлы, не открывая их.
+// Попадание в индекс — только кандидат: содержимое всё равно проверяет ContentMatcher.
+// Списки файлов по триграммам лежат в файле, отображённом в память; на куче только таблица документов.
+@Component
+public class ContentIndex {
+    private static final int FORMAT_VERSION = 3;
+    private static final int POSTINGS_HEADER_BYTES = 16;
+    private static final int TABLE_ENTRY_BYTES = 16;
+
+    private static final ThreadLocal<ByteBuffer> BUFFERS = ThreadLocal.withInitial(() -> ByteBuffer.allocate(ContentMatcher.CHUNK_SIZE));
+
+    @Value("${file.scanner.content-index.enabled:false}")
+    private boolean enabled;
+    @Value("${file.scanner.content-index.roots:}")
+    private String rootsConfig;
+    @Value("${file.scanner.content-index.dir:file-scanner-index}")
+    private String indexDir;
+    // Файлы больше этого размера не индексируются и всегда читаются с диска
+    @Value("${file.scanner.content-index.max-file-size:8388608}")
+    private long maxFileSize;
+    @Value("${file.scanner.content-index.rebuild-interval-ms:3600000}")
+    private long rebuildIntervalMillis;
+
+    private final List<IndexedRoot> roots = new ArrayList<>();
+    private ScheduledExecutorService maintenance;
+    // Пар (триграмма, документ) в одной серии перестройки; тесты уменьшают, чтобы проверить слияние
+    private int postingsRunPairs = PostingsWriter.RUN_PAIRS;
+
+    // Файл, переиндексированный после построения сегмента; trigrams == null — файл не индексируется
+    private record UpdatedDoc(long size, long lastModified, int[] trigrams) {
+    }
+
+    // Неизменяемый снимок индекса корня: таблица документов и отображённые в память списки
+    private static final class Segment {
+        final String[] keys;
+        final long[] sizes;
+        final long[] lastModified;
+        // Документы, для которых триграмм нет (слишком большие или нечитаемые): всегда кандидаты
+        final BitSet unindexed;
+        final Map<String, Integer> docIds;
+        // Формат: версия, поколение, число триграмм, таблица (триграмма, длина, смещение), списки id
+        final Postings postings;
+        final int trigramCount;
+
+        Segment(String[] keys, long[] sizes, long[] lastModified, BitSet unindexed, Postings postings) {
+            this.keys = keys;
+            this.sizes = sizes;
+            this.lastModified = lastModified;
+            this.unindexed = unindexed;
+            this.postings = postings;
+            this.trigramCount = postings.getInt(12);
+            this.docIds = new HashMap<>(keys.length * 2);
+            for (int i = 0; i < keys.length; i++) {
+                docIds.put(keys[i], i);
+            }
+        }
+
+        int docCount() {
+            return keys.length;
+        }
+
+        boolean current(int docId, long size, long lastModifiedMillis) {
+            return sizes[docId] == size && lastModified[docId] == lastModifiedMillis;
+        }
+
+        // Номер записи в таблице или -1
+        int find(int trigram) {
+            int low = 0;
+            int high = trigramCount - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                int value = trigram(mid);
+                if (value < trigram) {
+                    low = mid + 1;
+                } else if (value > trigram) {
+                    high = mid - 1;
+                } else {
+                    return mid;
+                }
+            }
+            return -1;
+        }
+
+        int trigram(int entry) {
+            return postings.getInt(POSTINGS_HEADER_BYTES + (long) entry * TABLE_ENTRY_BYTES);
+        }
+
+        int length(int entry) {
+            return postings.getInt(POSTINGS_HEADER_BYTES + (long) entry * TABLE_ENTRY_BYTES + 4);
+        }
+
+        void forEachDoc(int entry, IntConsumer action) {
+            long tableEnd = POSTINGS_HEADER_BYTES + (long) trigramCount * TABLE_ENTRY_BYTES;
+            long offset = postings.getLong(POSTINGS_HEADER_BYTES + (long) entry * TABLE_ENTRY_BYTES + 8);
+            int length = length(entry);
+            for (int i = 0; i < length; i++) {
+                action.accept(postings.getInt(tableEnd + (offset + i) * 4));
+            }
+        }
+
+        // Документы, содержащие все триграммы; пересечение начинаем с самого короткого списка
+        BitSet candidates(int[] trigrams) {
+            Integer[] entries = new Integer[trigrams.length];
+            for (int i = 0; i < trigrams.length; i++) {
+                entries[i] = find(trigrams[i]);
+                if (entries[i] < 0) {
+                    return (BitSet) unindexed.clone();
+                }
+            }
+            Arrays.sort(entries, Comparator.comparingInt(this::length));
+            BitSet result = null;
+            for (int entry : entries) {
+                BitSet docs = new BitSet(docCount());
+                forEachDoc(entry, docs::set);
+                if (result == null) {
+                    result = docs;
+                } else {
+                    result.and(docs);
+                }
+                if (result.isEmpty()) {
+                    break;
+                }
+            }
+            result.or(unindexed);
+            return result;
+        }
+    }
+
+    static class IndexedRoot {
+        final Path root;
+        volatile Segment segment;
+        // Изменения после построения сегмента; при следующей перестройке вливаются в него
+        final ConcurrentHashMap<String, UpdatedDoc> updates = new ConcurrentHashMap<>();
+        // Файлы, уже стоящие в очереди на переиндексацию
+        final Set<String> pending = ConcurrentHashMap.newKeySet();
+        volatile boolean rebuildScheduled = false;
+
+        IndexedRoot(Path root) {
+            this.root = root;
+        }
+
+        String key(Path file) {
+            return root.relativize(file).toString();
+        }
+    }
+
+    // Фильтр одного запроса: отвечает, может ли файл содержать текст, не открывая его
+    public class Prefilter {
+        private final IndexedRoot indexedRoot;
+        private final Segment segment;
+        private final int[] trigrams;
+        private final BitSet candidates;
+
+        Prefilter(IndexedRoot indexedRoot, Segment segment, int[] trigrams) {
+            this.indexedRoot = indexedRoot;
+            this.segment = segment;
+            this.trigrams = trigrams;
+            this.candidates = segment.candidates(trigrams);
+        }
+
+        public boolean mayContain(Path file, long size, long lastModifiedMillis) {
+            String key = indexedRoot.key(file);
+            UpdatedDoc updated = indexedRoot.updates.get(key);
+            if (updated != null) {
+                if (updated.size() == size && updated.lastModified() == lastModifiedMillis) {
+                    return updated.trigrams() == null || containsAll(updated.trigrams(), trigrams);
+                }
+            } else {
+                Integer docId = segment.docIds.get(key);
+                if (docId != null && segment.current(docId, size, lastModifiedMillis)) {
+                    return candidates.get(docId);
+                }
+            }
+            // Файл новый или изменился после индексации: читаем с диска, а индекс обновляем в фоне
+            scheduleUpdate(indexedRoot, file);
+            return true;
+        }
+    }
+
+    @PostConstruct
+    public void start() throws IOException {
+        if (!enabled || rootsConfig.isBlank()) {
+            return;
+        }
+        for (String root : rootsConfig.split(",")) {
+            if (!root.isBlank()) {
+                roots.add(new IndexedRoot(Paths.get(root.trim()).toAbsolutePath().normalize()));
+            }
+        }
+        Files.createDirectories(Paths.get(indexDir));
+
+        // Один поток обслуживания: перестройки и точечные обновления не пересекаются
+        maintenance = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "content-index-maintenance");
+            thread.setDaemon(true);
+            return thread;
+        });
+        maintenance.execute(this::initialize);
+        maintenance.scheduleWithFixedDelay(this::rebuildAll, rebuildIntervalMillis, rebuildIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    // null, если корень не проиндексирован или текст короче триграммы
+    public Prefilter prefilter(Path dir, String text) {
+        if (text == null) {
+            return null;
+        }
+        int[] trigrams = trigrams(text.getBytes(StandardCharsets.UTF_8));
+        if (trigrams.length == 0) {
+            return null;
+        }
+        Path normalized = dir.toAbsolutePath().normalize();
+        for (IndexedRoot indexedRoot : roots) {
+            Segment segment = indexedRoot.segment;
+            if (segment != null && normalized.startsWith(indexedRoot.root)) {
+                return new Prefilter(indexedRoot, segment, trigrams);
+            }
+        }
+        return null;
+    }
+
+    // Корень индекса с этим путём или null; для тестов
+    IndexedRoot indexedRoot(Path root) {
+        Path normalized = root.toAbsolutePath().normalize();
+        for (IndexedRoot indexedRoot : roots) {
+            if (indexedRoot.root.equals(normalized)) {
+                return indexedRoot;
+            }
+        }
+        return null;
+    }
+
+    private void initialize() {
+        for (IndexedRoot indexedRoot : roots) {
+            try {
+                if (load(indexedRoot)) {
+                    System.out.println("Loaded content index for " + indexedRoot.root + ": " + indexedRoot.segment.docCount() + " files");
+                } else {
+                    System.out.println("Building content index for " + indexedRoot.root);
+                    rebuild(indexedRoot);
+                }
+            } catch (IOException | RuntimeException e) {
+                // Исключение не должно оборвать задачу обслуживания: корень просто остаётся без индекса
+                System.err.println("Failed to initialize content index for " + indexedRoot.root + ": " + e);
+            }
+        }
+    }
+
+    private void rebuildAll() {
+        for (IndexedRoot indexedRoot : roots) {
+            if (indexedRoot.segment != null) {
+                rebuildLogged(indexedRoot);
+            }
+        }
+    }
+
+    private void scheduleUpdate(IndexedRoot indexedRoot, Path file) {
+        if (maintenance != null && indexedRoot.pending.add(indexedRoot.key(file))) {
+            maintenance.execute(() -> update(indexedRoot, file));
+        }
+    }
+
+    private void update(IndexedRoot indexedRoot, Path file) {
+        String key = indexedRoot.key(file);
+        indexedRoot.pending.remove(key);
+        try {
+            // Атрибуты читаем до содержимого: если файл изменится во время чтения, mtime не совпадёт
+            BasicFileAttributes attrs = Files.readAttributes(file, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+            int[] trigrams = attrs.isRegularFile() && attrs.size() <= maxFileSize ? fileTrigrams(file) : null;
+            indexedRoot.updates.put(key, new UpdatedDoc(attrs.size(), attrs.lastModifiedTime().toMillis(), trigrams));
+        } catch (NoSuchFileException e) {
+            indexedRoot.updates.remove(key);
+        } catch (IOException e) {
+            indexedRoot.updates.put(key, new UpdatedDoc(-1, -1, null));
+        }
+        // Изменений накопилось много: вливаем их в новый сегмент
+        Segment segment = indexedRoot.segment;
+        if (!indexedRoot.rebuildScheduled && segment != null
+                && indexedRoot.updates.size() > Math.max(1024, segment.docCount() / 4)) {
+            indexedRoot.rebuildScheduled = true;
+            maintenance.execute(() -> rebuildLogged(indexedRoot));
+        }
+    }
+
+    // Ошибка перестройки оставляет прежний сегмент; RuntimeException тоже ловится,
+    // иначе периодическая задача тихо прекратится
+    private void rebuildLogged(IndexedRoot indexedRoot) {
+        try {
+            rebuild(indexedRoot);
+        } catch (IOException | RuntimeException e) {
+            indexedRoot.rebuildScheduled = false;
+            System.err.println("Failed to rebuild content index for " + indexedRoot.root + ": " + e);
+        }
+    }
+
+    // Строит новый сегмент по текущему состоянию диска. Файлы, у которых размер и mtime
+    // не изменились, заново не читаются: их триграммы берутся из старого сегмента или обновлений.
+    // Триграммы по документам не копятся: каждая пара (триграмма, документ) сразу уходит
+    // в PostingsWriter, который держит в памяти не больше одной серии.
+    private void rebuild(IndexedRoot indexedRoot) throws IOException {
+        Path root = indexedRoot.root;
+        List<String> keys = new ArrayList<>();
+        List<long[]> stamps = new ArrayList<>();
+        Files.walkFileTree(root, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                // Ссылки и прочие нерегулярные файлы тоже записываются — как неиндексируемые,
+                // иначе каждый скан заново ставил бы их в очередь на обновление
+                keys.add(root.relativize(file).toString());
+                stamps.add(new long[]{attrs.size(), attrs.lastModifiedTime().toMillis(), attrs.isRegularFile() ? 1 : 0});
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException exc) {
+                return FileVisitResult.CONTINUE;
+            }
+        });
+
+        int docCount = keys.size();
+        long[] sizes = new long[docCount];
+        long[] lastModified = new long[docCount];
+        Segment old = indexedRoot.segment;
+        int[] oldToNew = new int[old != null ? old.docCount() : 0];
+        Arrays.fill(oldToNew, -1);
+        BitSet unindexed = new BitSet(docCount);
+        // Документы, чьи триграммы отданы писателю; остальные без триграмм — неиндексируемые
+        BitSet indexed = new BitSet(docCount);
+        List<Integer> toRead = new ArrayList<>();
+
+        long generation = ThreadLocalRandom.current().nextLong();
+        Path postings = postingsFile(indexedRoot, generation);
+        int trigramCount;
+        try (PostingsWriter writer = new PostingsWriter(postings, postingsRunPairs)) {
+            for (int docId = 0; docId < docCount; docId++) {
+                String key = keys.get(docId);
+                sizes[docId] = stamps.get(docId)[0];
+                lastModified[docId] = stamps.get(docId)[1];
+                UpdatedDoc updated = indexedRoot.updates.get(key);
+                Integer oldId = old != null ? old.docIds.get(key) : null;
+                if (sizes[docId] > maxFileSize || stamps.get(docId)[2] == 0) {
+                    unindexed.set(docId);
+                } else if (updated != null && updated.size() == sizes[docId] && updated.lastModified() == lastModified[docId]) {
+                    if (updated.trigrams() == null) {
+                        unindexed.set(docId);
+                    } else {
+                        writer.add(docId, updated.trigrams());
+                        indexed.set(docId);
+                    }
+                } else if (updated == null && oldId != null && old.current(oldId, sizes[docId], lastModified[docId])) {
+                    if (old.unindexed.get(oldId)) {
+                        unindexed.set(docId);
+                    } else {
+                        oldToNew[oldId] = docId;
+                        indexed.set(docId);
+                    }
+                } else {
+                    toRead.add(docId);
+                }
+            }
+
+            if (old != null) {
+                for (int entry = 0; entry < old.trigramCount; entry++) {
+                    int trigram = old.trigram(entry);
+                    old.forEachDoc(entry, oldId -> {
+                        if (oldToNew[oldId] >= 0) {
+                            writer.add(trigram, oldToNew[oldId]);
+                        }
+                    });
+                }
+            }
+
+            toRead.parallelStream().forEach(docId -> {
+                int[] trigrams;
+                try {
+                    trigrams = fileTrigrams(root.resolve(keys.get(docId)));
+                } catch (IOException e) {
+                    // Прочитать не удалось: файл останется кандидатом для каждого запроса
+                    return;
+                }
+                writer.add(docId, trigrams);
+                synchronized (indexed) {
+                    indexed.set(docId);
+                }
+            });
+            for (int docId = 0; docId < docCount; docId++) {
+                if (!indexed.get(docId)) {
+                    unindexed.set(docId);
+                }
+            }
+            trigramCount = writer.finish(generation);
+        }
+
+        indexedRoot.segment = save(indexedRoot, generation, keys.toArray(new String[0]), sizes, lastModified, unindexed, postings);
+        // Новые запросы уже читают новое поколение
+        deleteStalePostings(indexedRoot, generation);
+        indexedRoot.updates.clear();
+        indexedRoot.rebuildScheduled = false;
+        System.out.println("Built content index for " + root + ": " + docCount + " files, "
+                + trigramCount + " trigrams, " + toRead.size() + " files read");
+    }
+
+    private Path docsFile(IndexedRoot indexedRoot) {
+        return Paths.get(indexDir, "content-" + Integer.toHexString(indexedRoot.root.toString().hashCode()) + ".docs");
+    }
+
+    private String postingsPrefix(IndexedRoot indexedRoot) {
+        return "content-" + Integer.toHexString(indexedRoot.root.toString().hashCode()) + "-";
+    }
+
+    // У каждого поколения свой файл списков: отображённый в память файл нельзя заменить
+    // (Windows не даёт), поэтому новый пишется рядом, а старый удаляется после переключения
+    private Path postingsFile(IndexedRoot indexedRoot, long generation) {
+        return Paths.get(indexDir, postingsPrefix(indexedRoot) + Long.toHexString(generation) + ".postings");
+    }
+
+    // Пока старый файл отображён в сегменте, который дочитывают запросы, Windows его не удалит:
+    // такой файл остаётся до следующей перестройки или запуска
+    private void deleteStalePostings(IndexedRoot indexedRoot, long generation) {
+        Path current = postingsFile(indexedRoot, generation).getFileName();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(Paths.get(indexDir), postingsPrefix(indexedRoot) + "*.postings")) {
+            for (Path file : files) {
+                if (!file.getFileName().equals(current)) {
+                    try {
+                        Files.delete(file);
+                    } catch (IOException e) {
+                        System.err.println("Stale content index file is still in use: " + file);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Failed to clean up content index files: " + e.getMessage());
+        }
+    }
+
+    // Два файла: таблица документов и списки по триграммам. Файл документов называет поколение
+    // списков и заменяется атомарно последним: до этого момента загрузится прежняя пара.
+    private Segment save(IndexedRoot indexedRoot, long generation, String[] keys, long[] sizes, long[] lastModified,
+                         BitSet unindexed, Path postings) throws IOException {
+        Path docsTarget = docsFile(indexedRoot);
+        Path docsTemp = docsTarget.resolveSibling(docsTarget.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(docsTemp)))) {
+            out.writeInt(FORMAT_VERSION);
+            out.writeLong(generation);
+            out.writeUTF(indexedRoot.root.toString());
+            out.writeInt(keys.length);
+            for (int i = 0; i < keys.length; i++) {
+                out.writeUTF(keys[i]);
+                out.writeLong(sizes[i]);
+                out.writeLong(lastModified[i]);
+                out.writeBoolean(unindexed.get(i));
+            }
+        }
+        Segment segment = new Segment(keys, sizes, lastModified, unindexed, Postings.map(postings));
+        Files.move(docsTemp, docsTarget, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return segment;
+    }
+
+    private boolean load(IndexedRoot indexedRoot) throws IOException {
+        Path docsSource = docsFile(indexedRoot);
+        if (!Files.exists(docsSource)) {
+            return false;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(docsSource)))) {
+            if (in.readInt() != FORMAT_VERSION) {
+                return false;
+            }
+            long generation = in.readLong();
+            Path postingsSource = postingsFile(indexedRoot, generation);
+            if (!in.readUTF().equals(indexedRoot.root.toString()) || !Files.exists(postingsSource)) {
+                return false;
+            }
+            int docCount = in.readInt();
+            String[] keys = new String[docCount];
+            long[] sizes = new long[docCount];
+            long[] lastModified = new long[docCount];
+            BitSet unindexed = new BitSet(docCount);
+            for (int i = 0; i < docCount; i++) {
+                keys[i] = in.readUTF();
+                sizes[i] = in.readLong();
+                lastModified[i] = in.readLong();
+                if (in.readBoolean()) {
+                    unindexed.set(i);
+                }
+            }
+            Postings postings = Postings.map(postingsSource);
+            if (postings.getInt(0) != FORMAT_VERSION || postings.getLong(4) != generation) {
+                return false;
+            }
+            indexedRoot.segment = new Segment(keys, sizes, lastModified, unindexed, postings);
+            deleteStalePostings(indexedRoot, generation);
+            return true;
+        }
+    }
+
+    // Файл списков, отображённый кусками: один MappedByteBuffer ограничен 2 ГБ.
+    // Записи таблицы и списки выровнены по размеру своих значений, а кусок кратен 8,
+    // поэтому значение никогда не пересекает границу куска.
+    static final class Postings {
+        private static final int CHUNK_BITS = 30;
+
+        private final MappedByteBuffer[] chunks;
+        private final int chunkBits;
+        private final long chunkMask;
+
+        private Postings(MappedByteBuffer[] chunks, int chunkBits) {
+            this.chunks = chunks;
+            this.chunkBits = chunkBits;
+            this.chunkMask = (1L << chunkBits) - 1;
+        }
+
+        static Postings map(Path file) throws IOException {
+            return map(file, CHUNK_BITS);
+        }
+
+        static Postings map(Path file, int chunkBits) throws IOException {
+            long chunkSize = 1L << chunkBits;
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                long size = channel.size();
+                MappedByteBuffer[] chunks = new MappedByteBuffer[(int) Math.max(1, (size + chunkSize - 1) >>> chunkBits)];
+                for (int i = 0; i < chunks.length; i++) {
+                    long start = (long) i << chunkBits;
+                    chunks[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(size - start, chunkSize));
+                }
+                return new Postings(chunks, chunkBits);
+            }
+        }
+
+        int getInt(long position) {
+            return chunks[(int) (position >>> chunkBits)].getInt((int) (position & chunkMask));
+        }
+
+        long getLong(long position) {
+            return chunks[(int) (position >>> chunkBits)].getLong((int) (position & chunkMask));
+        }
+    }
+
+    // Пары (триграмма, документ) копятся в буфере ограниченного размера; полный буфер сортируется
+    // и сбрасывается на диск серией, а в конце серии сливаются. Память не растёт с размером корпуса.
+    // Итоговый файл: заголовок, таблица (триграмма, длина, смещение), списки id по возрастанию.
+    static final class PostingsWriter implements Closeable {
+        // 4М пар по 8 байт — 32 МБ на серию
+        static final int RUN_PAIRS = 1 << 22;
+
+        private final Path target;
+        private final int runPairs;
+        private long[] buffer = new long[1024];
+        private int buffered;
+        private final List<Path> runs = new ArrayList<>();
+        private final List<Integer> runSizes = new ArrayList<>();
+        private final Path table;
+        private final Path ids;
+
+        PostingsWriter(Path target, int runPairs) {
+            this.target = target;
+            this.runPairs = runPairs;
+            this.table = target.resolveSibling(target.getFileName() + ".table");
+            this.ids = target.resolveSibling(target.getFileName() + ".ids");
+        }
+
+        synchronized void add(int docId, int[] trigrams) {
+            for (int trigram : trigrams) {
+                add(trigram, docId);
+            }
+        }
+
+        // Пара упакована в long: порядок long — по триграмме, затем по документу
+        synchronized void add(int trigram, int docId) {
+            if (buffered == buffer.length) {
+                if (buffer.length < runPairs) {
+                    buffer = Arrays.copyOf(buffer, Math.min(runPairs, buffer.length * 2));
+                } else {
+                    spill();
+                }
+            }
+            buffer[buffered++] = ((long) trigram << 32) | docId;
+        }
+
+        private void spill() {
+            Arrays.sort(buffer, 0, buffered);
+            Path run = target.resolveSibling(target.getFileName() + ".run" + runs.size());
+            runs.add(run);
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(run)))) {
+                for (int i = 0; i < buffered; i++) {
+                    out.writeLong(buffer[i]);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            runSizes.add(buffered);
+            buffered = 0;
+        }
+
+        // Пишет итоговый файл и возвращает число триграмм
+        synchronized int finish(long generation) throws IOException {
+            ListsOutput output = new ListsOutput(table, ids);
+            try (output) {
+                if (runs.isEmpty()) {
+                    Arrays.sort(buffer, 0, buffered);
+                    for (int i = 0; i < buffered; i++) {
+                        output.accept(buffer[i]);
+                    }
+                } else {
+                    if (buffered > 0) {
+                        spill();
+                    }
+                    merge(output);
+                }
+            }
+            buffer = null;
+            try (FileChannel out = FileChannel.open(target, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                    StandardOpenOption.WRITE)) {
+                ByteBuffer header = ByteBuffer.allocate(POSTINGS_HEADER_BYTES);
+                header.putInt(FORMAT_VERSION).putLong(generation).putInt(output.trigramCount).flip();
+                while (header.hasRemaining()) {
+                    out.write(header);
+                }
+                append(out, table);
+                append(out, ids);
+            }
+            return output.trigramCount;
+        }
+
+        private void merge(ListsOutput output) throws IOException {
+            List<RunReader> readers = new ArrayList<>();
+            try {
+                PriorityQueue<RunReader> heap = new PriorityQueue<>(Comparator.comparingLong(reader -> reader.head));
+                for (int i = 0; i < runs.size(); i++) {
+                    RunReader reader = new RunReader(runs.get(i), runSizes.get(i));
+                    readers.add(reader);
+                    if (reader.advance()) {
+                        heap.add(reader);
+                    }
+                }
+                while (!heap.isEmpty()) {
+                    RunReader reader = heap.poll();
+                    output.accept(reader.head);
+                    if (reader.advance()) {
+                        heap.add(reader);
+                    }
+                }
+            } finally {
+                for (RunReader reader : readers) {
+                    reader.in.close();
+                }
+            }
+        }
+
+        private static void append(FileChannel out, Path part) throws IOException {
+            try (FileChannel in = FileChannel.open(part, StandardOpenOption.READ)) {
+                long size = in.size();
+                long done = 0;
+                while (done < size) {
+                    done += in.transferTo(done, size - done, out);
+                }
+            }
+        }
+
+        // Временные файлы удаляются и при ошибке; итоговый файл остаётся вызывающему
+        @Override
+        public void close() {
+            List<Path> temporary = new ArrayList<>(runs);
+            temporary.add(table);
+            temporary.add(ids);
+            for (Path file : temporary) {
+                try {
+                    Files.deleteIfExists(file);
+                } catch (IOException e) {
+                    System.err.println("Failed to delete " + file + ": " + e.getMessage());
+                }
+            }
+        }
+
+        private static final class RunReader {
+            final DataInputStream in;
+            int remaining;
+            long head;
+
+            RunReader(Path run, int size) throws IOException {
+                this.in = new DataInputStream(new BufferedInputStream(Files.newInputStream(run)));
+                this.remaining = size;
+            }
+
+            boolean advance() throws IOException {
+                if (remaining == 0) {
+                    return false;
+                }
+                head = in.readLong();
+                remaining--;
+                return true;
+            }
+        }
+
+        // Таблица известна только к концу слияния, поэтому таблица и списки пишутся
+        // в два файла и потом склеиваются за заголовком
+        private static final class ListsOutput implements Closeable {
+            final DataOutputStream table;
+            final DataOutputStream ids;
+            int trigramCount;
+            int trigram = -1;
+            int length;
+            long offset;
+            long previous = -1;
+
+            ListsOutput(Path table, Path ids) throws IOException {
+                this.table = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(table)));
+                this.ids = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(ids)));
+            }
+
+            void accept(long pair) throws IOException {
+                if (pair == previous) {
+                    return;
+                }
+                previous = pair;
+                int pairTrigram = (int) (pair >>> 32);
+                if (pairTrigram != trigram) {
+                    writeEntry();
+                    trigram = pairTrigram;
+                }
+                ids.writeInt((int) pair);
+                length++;
+            }
+
+            private void writeEntry() throws IOException {
+                if (length > 0) {
+                    table.writeInt(trigram);
+                    table.writeInt(length);
+                    table.writeLong(offset);
+                    offset += length;
+                    length = 0;
+                    trigramCount++;
+                }
+            }
+
+            @Override
+            public void close() throws IOException {
+                try {
+                    writeEntry();
+                } finally {
+                    table.close();
+                    ids.close();
+                }
+            }
+        }
+    }
+
+    // Отсортированные различные триграммы файла. Повторы удаляются по мере заполнения массива,
+    // поэтому память растёт с числом различных триграмм, а не с размером файла.
+    static int[] fileTrigrams(Path file) throws IOException {
+        ByteBuffer buffer = BUFFERS.get();
+        byte[] data = buffer.array();
+        IntList seen = new IntList();
+        int window = 0;
+        long count = 0;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            int read;
+            while ((read = channel.read(buffer.clear())) >= 0) {
+                for (int i = 0; i < read; i++) {
+                    window = ((window << 8) | (data[i] & 0xFF)) & 0xFFFFFF;
+                    if (++count >= 3) {
+                        seen.addCompacting(window);
+                    }
+                }
+            }
+        }
+        return seen.toDistinctArray();
+    }
+
+    static int[] trigrams(byte[] text) {
+        IntList seen = new IntList();
+        for (int i = 2; i < text.length; i++) {
+            seen.add(((text[i - 2] & 0xFF) << 16) | ((text[i - 1] & 0xFF) << 8) | (text[i] & 0xFF));
+        }
+        return seen.toDistinctArray();
+    }
+
+    private static boolean containsAll(int[] sorted, int[] required) {
+        for (int trigram : required) {
+            if (Arrays.binarySearch(sorted, trigram) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static final class IntList {
+        int[] values = new int[4];
+        int size;
+
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        void sort() {
+            Arrays.sort(values, 0, size);
+        }
+
+        // Перед ростом массива удаляем повторы; растём, только если различных больше половины
+        void addCompacting(int value) {
+            if (size == values.length && size >= 1024) {
+                sortDistinct();
+                if (size > values.length / 2) {
+                    values = Arrays.copyOf(values, values.length * 2);
+                }
+            }
+            add(value);
+        }
+
+        void sortDistinct() {
+            sort();
+            int distinct = 0;
+            for (int i = 0; i < size; i++) {
+                if (distinct == 0 || values[distinct - 1] != values[i]) {
+                    values[distinct++] = values[i];
+                }
+            }
+            size = distinct;
+        }
+
+        int[] toDistinctArray() {
+            sortDistinct();
+            return Arrays.copyOf(values, size);
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (maintenance != null) {
+            maintenance.shutdownNow();
+        }
+    }
+}
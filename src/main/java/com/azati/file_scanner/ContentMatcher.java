@@ -0,0 +1,125 @@
+package com.azati.file_scanner;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+// Потоковый поиск подстроки в файле по байтам (Boyer-Moore-Horspool).
+// Файл читается кусками в буфер потока, поэтому память не зависит от размера файла.
+public class ContentMatcher {
+    static final int CHUNK_SIZE = 64 * 1024;
+    // Сколько первых байт проверять на признаки двоичного файла
+    static final int SNIFF_SIZE = 8 * 1024;
+
+    public enum Result { FOUND, NOT_FOUND, BINARY }
+
+    // Буфер переиспользуется всеми проверками в одном потоке
+    private static final ThreadLocal<ByteBuffer> BUFFERS = ThreadLocal.withInitial(() -> ByteBuffer.allocate(CHUNK_SIZE));
+
+    private final byte[] needle;
+    private final int[] shift = new int[256];
+
+    public ContentMatcher(String text) {
+        this.needle = text.getBytes(StandardCharsets.UTF_8);
+        if (needle.length == 0) {
+            throw new IllegalArgumentException("Search text must not be empty.");
+        }
+        int last = needle.length - 1;
+        Arrays.fill(shift, needle.length);
+        for (int i = 0; i < last; i++) {
+            shift[needle[i] & 0xFF] = last - i;
+        }
+    }
+
+    public boolean matches(Path file, ScanSession session) throws IOException {
+        return search(file, session, false) == Result.FOUND;
+    }
+
+    public Result search(Path file, ScanSession session, boolean sniff) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            // Буфер потока уже обёрнут вокруг массива: сдвигаем позицию, без новой обёртки на каждый кусок
+            return search((buffer, offset) -> channel.read(buffer.clear().position(offset)), session, sniff);
+        }
+    }
+
+    // Поток распакованных данных (gzip, запись zip)
+    public Result search(InputStream in, ScanSession session, boolean sniff) throws IOException {
+        return search((buffer, offset) -> in.read(buffer.array(), offset, buffer.capacity() - offset), session, sniff);
+    }
+
+    // Дочитывает в буфер с позиции offset до его конца
+    private interface ChunkSource {
+        int read(ByteBuffer buffer, int offset) throws IOException;
+    }
+
+    // Останавливается на первом совпадении. При sniff первые SNIFF_SIZE байт проверяются
+    // на нулевой байт: такой файл считается двоичным и дальше не читается.
+    private Result search(ChunkSource source, ScanSession session, boolean sniff) throws IOException {
+        ByteBuffer buffer = buffer();
+        byte[] data = buffer.array();
+        int keepSize = needle.length - 1;
+        int filled = 0;
+        int sniffRemaining = sniff ? SNIFF_SIZE : 0;
+
+        while (true) {
+            if (session != null && session.stopped) {
+                return Result.NOT_FOUND;
+            }
+            int read = source.read(buffer, filled);
+            if (read < 0) {
+                return Result.NOT_FOUND;
+            }
+            if (session != null) {
+                session.bytesRead(read);
+            }
+            if (sniffRemaining > 0) {
+                int sniffed = Math.min(read, sniffRemaining);
+                for (int i = filled; i < filled + sniffed; i++) {
+                    if (data[i] == 0) {
+                        return Result.BINARY;
+                    }
+                }
+                sniffRemaining -= sniffed;
+            }
+            filled += read;
+            if (indexOf(data, filled) >= 0) {
+                return Result.FOUND;
+            }
+            // Хвост куска оставляем, чтобы найти совпадение на границе двух кусков
+            int keep = Math.min(keepSize, filled);
+            System.arraycopy(data, filled - keep, data, 0, keep);
+            filled = keep;
+        }
+    }
+
+    int indexOf(byte[] data, int length) {
+        int last = needle.length - 1;
+        int i = 0;
+        while (i <= length - needle.length) {
+            int j = last;
+            while (data[i + j] == needle[j]) {
+                if (j == 0) {
+                    return i;
+                }
+                j--;
+            }
+            i += shift[data[i + last] & 0xFF];
+        }
+        return -1;
+    }
+
+    private ByteBuffer buffer() {
+        ByteBuffer buffer = BUFFERS.get();
+        if (buffer.capacity() < needle.length * 2) {
+            buffer = ByteBuffer.allocate(needle.length * 2);
+            BUFFERS.set(buffer);
+        }
+        buffer.clear();
+        return buffer;
+    }
+}
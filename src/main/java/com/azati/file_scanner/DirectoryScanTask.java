@@ -0,0 +1,200 @@
+package com.azati.file_scanner;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RecursiveAction;
+
+// Обход одной директории внутри ForkJoinPool. Поддиректории любой глубины
+// попадают в очередь воркера, откуда их забирают простаивающие потоки.
+public class DirectoryScanTask extends RecursiveAction {
+    // Сколько записей большой директории обрабатывается одной подзадачей
+    static final int ENTRY_BATCH_SIZE = 256;
+    // Если в очереди воркера уже столько задач, следующую поддиректорию обходим сами
+    static final int SURPLUS_THRESHOLD = 3;
+
+    private final ScanSession session;
+    private final FileSearchVisitor visitor;
+    private final Path dir;
+    // Цепочка fileKey директорий от корня; ведётся только при followLinks, чтобы не зациклиться
+    private final Ancestor ancestors;
+    private boolean forked;
+
+    record Ancestor(Object fileKey, Ancestor parent) {
+        boolean contains(Object key) {
+            for (Ancestor ancestor = this; ancestor != null; ancestor = ancestor.parent) {
+                if (ancestor.fileKey.equals(key)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    public DirectoryScanTask(ScanSession session, FileSearchVisitor visitor, Path dir) {
+        this(session, visitor, dir, rootAncestors(session, dir));
+    }
+
+    private DirectoryScanTask(ScanSession session, FileSearchVisitor visitor, Path dir, Ancestor ancestors) {
+        this.session = session;
+        this.visitor = visitor;
+        this.dir = dir;
+        this.ancestors = ancestors;
+    }
+
+    private static Ancestor rootAncestors(ScanSession session, Path root) {
+        if (!session.walk.followLinks) {
+            return null;
+        }
+        try {
+            Object fileKey = Files.readAttributes(root, BasicFileAttributes.class).fileKey();
+            return fileKey != null ? new Ancestor(fileKey, null) : null;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    @Override
+    protected void compute() {
+        long startedAt = System.nanoTime();
+        try {
+            scanDirectory();
+        } finally {
+            if (forked) {
+                session.releaseForkSlot();
+                session.metrics.traversalTask(System.nanoTime() - startedAt);
+            }
+        }
+    }
+
+    private void scanDirectory() {
+        if (session.stopped) {
+            return;
+        }
+        session.directoryVisited();
+
+        List<RecursiveAction> forkedTasks = new ArrayList<>();
+        List<Path> batch = new ArrayList<>();
+
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(dir)) {
+            for (Path entry : entries) {
+                if (session.stopped) {
+                    break;
+                }
+                batch.add(entry);
+                if (batch.size() == ENTRY_BATCH_SIZE) {
+                    // Большая директория: атрибуты и фильтры считаем в нескольких потоках
+                    EntryBatchTask batchTask = new EntryBatchTask(session, visitor, batch, ancestors);
+                    if (trySplit(session)) {
+                        batchTask.forked = true;
+                        batchTask.fork();
+                        forkedTasks.add(batchTask);
+                    } else {
+                        batchTask.compute();
+                    }
+                    batch = new ArrayList<>();
+                }
+            }
+        } catch (IOException e) {
+            visitor.visitFileFailed(dir, e);
+        }
+
+        if (!batch.isEmpty()) {
+            new EntryBatchTask(session, visitor, batch, ancestors).compute();
+        }
+        joinAll(forkedTasks);
+    }
+
+    // Форкаем, только если у воркера нет лишних задач и сессия не превысила свою долю пула
+    static boolean trySplit(ScanSession session) {
+        return getSurplusQueuedTaskCount() <= SURPLUS_THRESHOLD && session.tryAcquireForkSlot();
+    }
+
+    static void joinAll(List<RecursiveAction> forked) {
+        for (int i = forked.size() - 1; i >= 0; i--) {
+            forked.get(i).join();
+        }
+    }
+
+    static class EntryBatchTask extends RecursiveAction {
+        private final ScanSession session;
+        private final FileSearchVisitor visitor;
+        private final List<Path> entries;
+        private final Ancestor ancestors;
+        private boolean forked;
+
+        EntryBatchTask(ScanSession session, FileSearchVisitor visitor, List<Path> entries, Ancestor ancestors) {
+            this.session = session;
+            this.visitor = visitor;
+            this.entries = entries;
+            this.ancestors = ancestors;
+        }
+
+        @Override
+        protected void compute() {
+            long startedAt = System.nanoTime();
+            try {
+                visitEntries();
+            } finally {
+                if (forked) {
+                    session.releaseForkSlot();
+                    session.metrics.traversalTask(System.nanoTime() - startedAt);
+                }
+            }
+        }
+
+        private void visitEntries() {
+            List<RecursiveAction> forkedTasks = new ArrayList<>();
+            int files = 0;
+            for (Path entry : entries) {
+                if (session.stopped) {
+                    break;
+                }
+                BasicFileAttributes attrs;
+                try {
+                    attrs = Files.readAttributes(entry, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                } catch (IOException e) {
+                    visitor.visitFileFailed(entry, e);
+                    continue;
+                }
+                if (attrs.isSymbolicLink() && session.walk.followLinks) {
+                    try {
+                        attrs = Files.readAttributes(entry, BasicFileAttributes.class);
+                    } catch (IOException e) {
+                        // Битая ссылка остаётся файлом-ссылкой, как у Files.walkFileTree
+                    }
+                }
+
+                if (!attrs.isDirectory()) {
+                    files++;
+                    visitor.visitFile(entry, attrs);
+                } else if (visitor.preVisitDirectory(entry, attrs) == FileVisitResult.CONTINUE) {
+                    Ancestor subtreeAncestors = null;
+                    if (ancestors != null && attrs.fileKey() != null) {
+                        if (ancestors.contains(attrs.fileKey())) {
+                            System.err.println("Skipping symbolic link cycle: " + entry);
+                            continue;
+                        }
+                        subtreeAncestors = new Ancestor(attrs.fileKey(), ancestors);
+                    }
+                    DirectoryScanTask subtask = new DirectoryScanTask(session, visitor, entry, subtreeAncestors);
+                    if (trySplit(session)) {
+                        subtask.forked = true;
+                        subtask.fork();
+                        forkedTasks.add(subtask);
+                    } else {
+                        subtask.compute();
+                    }
+                }
+            }
+            session.filesVisited(files);
+            joinAll(forkedTasks);
+        }
+    }
+}
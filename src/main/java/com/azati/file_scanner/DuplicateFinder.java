@@ -0,0 +1,151 @@
+package com.azati.file_scanner;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+// Поиск дубликатов по найденным файлам в три ступени, каждая читает меньше предыдущей:
+// группировка по размеру (без чтения), хэш первого и последнего блока, полный хэш.
+// Полностью читаются только файлы, совпавшие по размеру и по краям.
+public class DuplicateFinder {
+    static final int BLOCK_SIZE = 4 * 1024;
+
+    // Буфер и дайджест переиспользуются всеми файлами в одном потоке
+    private static final ThreadLocal<ByteBuffer> BUFFERS = ThreadLocal.withInitial(() -> ByteBuffer.allocate(ContentMatcher.CHUNK_SIZE));
+    private static final ThreadLocal<MessageDigest> DIGESTS = ThreadLocal.withInitial(DuplicateFinder::newDigest);
+
+    public record DuplicateGroup(long size, String hash, List<String> paths) {
+    }
+
+    // Позиция файла в результате сканирования и хэш
+    private record Hashed(int file, String hash) {
+    }
+
+    private final ScanSession session;
+
+    public DuplicateFinder(ScanSession session) {
+        this.session = session;
+    }
+
+    // Вызывается внутри пула сканирования: параллельные стримы работают на его потоках.
+    // Пустые файлы не считаются дубликатами друг друга.
+    public List<DuplicateGroup> find(ScanResults files) {
+        List<List<Integer>> sameSize = collisions(IntStream.range(0, files.size()).boxed()
+                .filter(file -> files.fileSize(file) > 0)
+                .collect(Collectors.groupingBy(files::fileSize)));
+
+        // Файлы не больше двух блоков по краям читаются целиком: хэш краёв уже полный
+        List<List<Hashed>> sameEdges = collisions(sameSize.parallelStream()
+                .flatMap(List::stream)
+                .map(file -> hash(files, file, true))
+                .filter(hashed -> hashed != null)
+                .collect(Collectors.groupingByConcurrent(hashed -> files.fileSize(hashed.file()) + ":" + hashed.hash())));
+
+        List<DuplicateGroup> groups = new ArrayList<>();
+        List<Hashed> needFullHash = new ArrayList<>();
+        for (List<Hashed> group : sameEdges) {
+            if (files.fileSize(group.get(0).file()) <= 2L * BLOCK_SIZE) {
+                groups.add(toGroup(files, group));
+            } else {
+                needFullHash.addAll(group);
+            }
+        }
+
+        collisions(needFullHash.parallelStream()
+                .map(hashed -> hash(files, hashed.file(), false))
+                .filter(hashed -> hashed != null)
+                .collect(Collectors.groupingByConcurrent(hashed -> files.fileSize(hashed.file()) + ":" + hashed.hash())))
+                .forEach(group -> groups.add(toGroup(files, group)));
+
+        // Сначала группы, где дубликаты занимают больше всего места
+        groups.sort(Comparator.comparingLong((DuplicateGroup group) -> group.size() * (group.paths().size() - 1)).reversed()
+                .thenComparing(group -> group.paths().get(0)));
+        return groups;
+    }
+
+    private static <K, V> List<List<V>> collisions(Map<K, List<V>> groups) {
+        List<List<V>> result = new ArrayList<>();
+        for (List<V> group : groups.values()) {
+            if (group.size() > 1) {
+                result.add(group);
+            }
+        }
+        return result;
+    }
+
+    private static DuplicateGroup toGroup(ScanResults files, List<Hashed> group) {
+        List<String> paths = new ArrayList<>(group.size());
+        for (Hashed hashed : group) {
+            paths.add(files.get(hashed.file()));
+        }
+        paths.sort(null);
+        return new DuplicateGroup(files.fileSize(group.get(0).file()), group.get(0).hash(), paths);
+    }
+
+    // null, если файл не прочитался или сканирование прервано
+    private Hashed hash(ScanResults files, int file, boolean edgesOnly) {
+        if (session.interrupted) {
+            return null;
+        }
+        try {
+            Path path = Paths.get(files.get(file));
+            // Ссылка на другой файл — не копия: иначе каждая ссылка попала бы в дубликаты своей цели
+            if (edgesOnly && !Files.isRegularFile(path, LinkOption.NOFOLLOW_LINKS)) {
+                return null;
+            }
+            MessageDigest digest = DIGESTS.get();
+            digest.reset();
+            ByteBuffer buffer = BUFFERS.get();
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                long size = channel.size();
+                if (edgesOnly && size > 2L * BLOCK_SIZE) {
+                    digestRange(channel, 0, BLOCK_SIZE, buffer, digest);
+                    digestRange(channel, size - BLOCK_SIZE, BLOCK_SIZE, buffer, digest);
+                } else {
+                    digestRange(channel, 0, size, buffer, digest);
+                }
+            }
+            return session.interrupted ? null : new Hashed(file, HexFormat.of().formatHex(digest.digest()));
+        } catch (IOException | InvalidPathException e) {
+            System.err.println("Error hashing file: " + files.get(file) + " - " + e.getMessage());
+            return null;
+        }
+    }
+
+    private void digestRange(FileChannel channel, long position, long length, ByteBuffer buffer, MessageDigest digest) throws IOException {
+        long end = position + length;
+        while (position < end && !session.interrupted) {
+            buffer.clear().limit((int) Math.min(buffer.capacity(), end - position));
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                return;
+            }
+            session.bytesRead(read);
+            digest.update(buffer.array(), 0, read);
+            position += read;
+        }
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
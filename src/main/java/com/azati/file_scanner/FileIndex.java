@@ -0,0 +1,398 @@
+package com.azati.file_scanner;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.file.StandardWatchEventKinds.*;
+
+// Необязательный индекс метаданных (путь, размер, mtime) для настроенных корней.
+// Строится один раз, хранится на диске и поддерживается событиями WatchService;
+// периодическая сверка с диском подбирает потерянные события.
+@Component
+public class FileIndex {
+    private static final int FORMAT_VERSION = 1;
+
+    @Value("${file.scanner.index.enabled:false}")
+    private boolean enabled;
+    @Value("${file.scanner.index.roots:}")
+    private String rootsConfig;
+    @Value("${file.scanner.index.dir:file-scanner-index}")
+    private String indexDir;
+    @Value("${file.scanner.index.reconcile-interval-ms:3600000}")
+    private long reconcileIntervalMillis;
+
+    private final List<IndexedRoot> roots = new ArrayList<>();
+    private final ConcurrentHashMap<WatchKey, Path> watchedDirs = new ConcurrentHashMap<>();
+    // Обратная карта: сверка и новые поддеревья ставят наблюдение только на ещё не наблюдаемые директории
+    private final ConcurrentHashMap<Path, WatchKey> watchKeysByDir = new ConcurrentHashMap<>();
+    private WatchService watchService;
+    private ScheduledExecutorService maintenance;
+    private Thread watcherThread;
+
+    public record FileMeta(long size, long lastModified) {
+    }
+
+    public static class IndexedRoot {
+        final Path root;
+        final String separator;
+        // Относительный путь -> метаданные; отсортировано, поэтому поддерево = диапазон ключей
+        volatile ConcurrentSkipListMap<String, FileMeta> files = new ConcurrentSkipListMap<>();
+        volatile boolean ready = false;
+        // Пути, изменившиеся во время сверки; перепроверяются после подмены карты
+        volatile ConcurrentLinkedQueue<Path> changedDuringReconcile;
+
+        IndexedRoot(Path root) {
+            this.root = root;
+            this.separator = root.getFileSystem().getSeparator();
+        }
+
+        String key(Path file) {
+            return root.relativize(file).toString();
+        }
+
+        NavigableMap<String, FileMeta> subtree(Path dir) {
+            if (dir.equals(root)) {
+                return files;
+            }
+            String prefix = key(dir) + separator;
+            return files.subMap(prefix, true, prefix + Character.MAX_VALUE, false);
+        }
+
+        public int size() {
+            return files.size();
+        }
+    }
+
+    @PostConstruct
+    public void start() throws IOException {
+        if (!enabled || rootsConfig.isBlank()) {
+            return;
+        }
+        for (String root : rootsConfig.split(",")) {
+            if (!root.isBlank()) {
+                roots.add(new IndexedRoot(Paths.get(root.trim()).toAbsolutePath().normalize()));
+            }
+        }
+        Files.createDirectories(Paths.get(indexDir));
+        watchService = FileSystems.getDefault().newWatchService();
+
+        maintenance = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "file-index-maintenance");
+            thread.setDaemon(true);
+            return thread;
+        });
+        maintenance.execute(this::initialize);
+        maintenance.scheduleWithFixedDelay(this::reconcileAll, reconcileIntervalMillis, reconcileIntervalMillis, TimeUnit.MILLISECONDS);
+
+        watcherThread = new Thread(this::processEvents, "file-index-watcher");
+        watcherThread.setDaemon(true);
+        watcherThread.start();
+    }
+
+    // Корень индекса, которому принадлежит директория, если индекс для него готов
+    public IndexedRoot find(Path dir) {
+        Path normalized = dir.toAbsolutePath().normalize();
+        for (IndexedRoot indexedRoot : roots) {
+            if (indexedRoot.ready && normalized.startsWith(indexedRoot.root)) {
+                return indexedRoot;
+            }
+        }
+        return null;
+    }
+
+    // Корень индекса независимо от готовности: события нужны и во время первой сверки
+    private IndexedRoot owner(Path path) {
+        for (IndexedRoot indexedRoot : roots) {
+            if (path.startsWith(indexedRoot.root)) {
+                return indexedRoot;
+            }
+        }
+        return null;
+    }
+
+    public void forEachFile(IndexedRoot indexedRoot, Path dir, FileSearchVisitor visitor) {
+        Path normalized = dir.toAbsolutePath().normalize();
+        indexedRoot.subtree(normalized).entrySet().parallelStream().forEach(entry ->
+                visitor.visitIndexedFile(indexedRoot.root.resolve(entry.getKey()),
+                        entry.getValue().size(), entry.getValue().lastModified()));
+    }
+
+    // Загруженный индекс отвечает сразу после включения наблюдения: события с этого момента
+    // применяются, а то, что изменилось, пока сервис был остановлен, подбирает сверка в фоне.
+    // Корень без сохранённого индекса становится готов после первого обхода.
+    private void initialize() {
+        List<IndexedRoot> toReconcile = new ArrayList<>();
+        for (IndexedRoot indexedRoot : roots) {
+            try {
+                boolean loaded = load(indexedRoot);
+                registerTree(indexedRoot.root);
+                if (loaded) {
+                    indexedRoot.ready = true;
+                    System.out.println("Loaded file index for " + indexedRoot.root + ": " + indexedRoot.size() + " files");
+                } else {
+                    System.out.println("Building file index for " + indexedRoot.root);
+                }
+                toReconcile.add(indexedRoot);
+            } catch (IOException e) {
+                System.err.println("Failed to initialize file index for " + indexedRoot.root + ": " + e.getMessage());
+            }
+        }
+        // Сверки идут следующими задачами того же потока, после загрузки всех корней
+        for (IndexedRoot indexedRoot : toReconcile) {
+            maintenance.execute(() -> {
+                if (reconcile(indexedRoot)) {
+                    indexedRoot.ready = true;
+                }
+            });
+        }
+    }
+
+    // Заодно ставит наблюдение на директории, которые ещё не наблюдаются
+    private ConcurrentSkipListMap<String, FileMeta> crawl(Path root) throws IOException {
+        ConcurrentSkipListMap<String, FileMeta> files = new ConcurrentSkipListMap<>();
+        Files.walkFileTree(root, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                watch(dir);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                files.put(root.relativize(file).toString(), new FileMeta(attrs.size(), attrs.lastModifiedTime().toMillis()));
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException exc) {
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        return files;
+    }
+
+    private void registerTree(Path start) throws IOException {
+        Files.walkFileTree(start, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                watch(dir);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException exc) {
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    // Ключ удалённой и заново созданной директории уже недействителен: такую регистрируем снова
+    private void watch(Path dir) throws IOException {
+        WatchKey existing = watchKeysByDir.get(dir);
+        if (existing == null || !existing.isValid()) {
+            WatchKey key = dir.register(watchService, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY);
+            watchedDirs.put(key, dir);
+            watchKeysByDir.put(dir, key);
+        }
+    }
+
+    private void processEvents() {
+        while (!Thread.currentThread().isInterrupted()) {
+            WatchKey key;
+            try {
+                key = watchService.take();
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                return;
+            }
+            Path dir = watchedDirs.get(key);
+            if (dir != null) {
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == OVERFLOW) {
+                        // События потеряны: сверяем корень целиком
+                        IndexedRoot indexedRoot = owner(dir);
+                        if (indexedRoot != null && indexedRoot.ready) {
+                            maintenance.execute(() -> reconcile(indexedRoot));
+                        }
+                        continue;
+                    }
+                    applyChange(dir.resolve((Path) event.context()), event.kind() == ENTRY_CREATE);
+                }
+            }
+            if (!key.reset()) {
+                watchedDirs.remove(key);
+                if (dir != null) {
+                    watchKeysByDir.remove(dir, key);
+                }
+            }
+        }
+    }
+
+    private void applyChange(Path path, boolean created) {
+        IndexedRoot indexedRoot = owner(path);
+        if (indexedRoot == null) {
+            return;
+        }
+        ConcurrentLinkedQueue<Path> changed = indexedRoot.changedDuringReconcile;
+        if (changed != null) {
+            changed.add(path);
+        }
+        refresh(indexedRoot, path, created);
+    }
+
+    private void refresh(IndexedRoot indexedRoot, Path path, boolean created) {
+        String key = indexedRoot.key(path);
+        try {
+            BasicFileAttributes attrs = Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+            if (attrs.isDirectory()) {
+                if (created) {
+                    indexedRoot.files.putAll(prefixed(indexedRoot, crawl(path), key));
+                }
+            } else {
+                indexedRoot.files.put(key, new FileMeta(attrs.size(), attrs.lastModifiedTime().toMillis()));
+            }
+        } catch (NoSuchFileException e) {
+            // Удалён файл или целое поддерево
+            indexedRoot.files.remove(key);
+            indexedRoot.subtree(path).clear();
+        } catch (IOException e) {
+            System.err.println("Failed to update file index for " + path + ": " + e.getMessage());
+        }
+    }
+
+    private Map<String, FileMeta> prefixed(IndexedRoot indexedRoot, Map<String, FileMeta> files, String prefix) {
+        Map<String, FileMeta> result = new HashMap<>();
+        files.forEach((key, meta) -> result.put(prefix + indexedRoot.separator + key, meta));
+        return result;
+    }
+
+    private void reconcileAll() {
+        for (IndexedRoot indexedRoot : roots) {
+            if (indexedRoot.ready) {
+                reconcile(indexedRoot);
+            }
+        }
+    }
+
+    private boolean reconcile(IndexedRoot indexedRoot) {
+        ConcurrentLinkedQueue<Path> changed = new ConcurrentLinkedQueue<>();
+        indexedRoot.changedDuringReconcile = changed;
+        try {
+            ConcurrentSkipListMap<String, FileMeta> files = crawl(indexedRoot.root);
+            indexedRoot.files = files;
+            indexedRoot.changedDuringReconcile = null;
+            for (Path path : changed) {
+                refresh(indexedRoot, path, false);
+            }
+            save(indexedRoot);
+            System.out.println("Reconciled file index for " + indexedRoot.root + ": " + indexedRoot.size() + " files");
+            return true;
+        } catch (IOException e) {
+            indexedRoot.changedDuringReconcile = null;
+            System.err.println("Failed to reconcile file index for " + indexedRoot.root + ": " + e.getMessage());
+            return false;
+        }
+    }
+
+    private Path indexFile(IndexedRoot indexedRoot) {
+        return Paths.get(indexDir, "index-" + Integer.toHexString(indexedRoot.root.toString().hashCode()) + ".bin");
+    }
+
+    // Формат: версия, корень, затем записи в порядке ключей, каждая с флагом продолжения.
+    // У соседних ключей общий префикс, поэтому хранится только его длина и остаток.
+    private void save(IndexedRoot indexedRoot) throws IOException {
+        Path target = indexFile(indexedRoot);
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+            out.writeInt(FORMAT_VERSION);
+            out.writeUTF(indexedRoot.root.toString());
+            String previous = "";
+            for (Map.Entry<String, FileMeta> entry : indexedRoot.files.entrySet()) {
+                String key = entry.getKey();
+                int shared = sharedPrefix(previous, key);
+                out.writeBoolean(true);
+                out.writeShort(shared);
+                out.writeUTF(key.substring(shared));
+                out.writeLong(entry.getValue().size());
+                out.writeLong(entry.getValue().lastModified());
+                previous = key;
+            }
+            out.writeBoolean(false);
+        }
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private boolean load(IndexedRoot indexedRoot) throws IOException {
+        Path source = indexFile(indexedRoot);
+        if (!Files.exists(source)) {
+            return false;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(source)))) {
+            if (in.readInt() != FORMAT_VERSION || !in.readUTF().equals(indexedRoot.root.toString())) {
+                return false;
+            }
+            ConcurrentSkipListMap<String, FileMeta> files = new ConcurrentSkipListMap<>();
+            String previous = "";
+            while (in.readBoolean()) {
+                int shared = in.readUnsignedShort();
+                String key = previous.substring(0, shared) + in.readUTF();
+                files.put(key, new FileMeta(in.readLong(), in.readLong()));
+                previous = key;
+            }
+            indexedRoot.files = files;
+            return true;
+        }
+    }
+
+    private static int sharedPrefix(String a, String b) {
+        int max = Math.min(Math.min(a.length(), b.length()), 0xFFFF);
+        int i = 0;
+        while (i < max && a.charAt(i) == b.charAt(i)) {
+            i++;
+        }
+        return i;
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (!enabled || watchService == null) {
+            return;
+        }
+        maintenance.shutdownNow();
+        watcherThread.interrupt();
+        try {
+            watchService.close();
+        } catch (IOException e) {
+            System.err.println("Failed to close watch service: " + e.getMessage());
+        }
+        for (IndexedRoot indexedRoot : roots) {
+            if (indexedRoot.ready) {
+                try {
+                    save(indexedRoot);
+                } catch (IOException e) {
+                    System.err.println("Failed to save file index for " + indexedRoot.root + ": " + e.getMessage());
+                }
+            }
+        }
+    }
+}
@@ -1,23 +1,47 @@
 package com.azati.file_scanner;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.io.IOException;
+import java.io.OutputStream;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 @RestController
 @RequestMapping("/scan")
 public class FileScanController {
+    private static final MediaType NDJSON = MediaType.parseMediaType("application/x-ndjson");
+
     private final FileScanService fileScanService;
+    private final ClusterCoordinator clusterCoordinator;
+    private final ScanJobService scanJobService;
+    private final ObjectMapper objectMapper;
+    @Value("${file.scanner.stream.buffer-size:1024}")
+    private int streamBufferSize;
+    @Value("${file.scanner.stream.stall-timeout-ms:60000}")
+    private long streamStallTimeoutMillis;
 
-    public FileScanController (FileScanService fileScanService){
+    public FileScanController (FileScanService fileScanService, ClusterCoordinator clusterCoordinator,
+                               ScanJobService scanJobService, ObjectMapper objectMapper){
         this.fileScanService = fileScanService;
+        this.clusterCoordinator = clusterCoordinator;
+        this.scanJobService = scanJobService;
+        this.objectMapper = objectMapper;
     }
     @GetMapping
     public ResponseEntity<List<String>> scanFiles(
@@ -28,14 +52,24 @@ public class FileScanController {
             @RequestParam(required = false) Long maxSizeKB,
             @RequestParam(required = false) String modifiedAfter,
             @RequestParam(required = false) String modifiedBefore,
-            @RequestParam(required = false) String containsText
+            @RequestParam(required = false) String containsText,
+            @RequestParam(required = false) List<String> exclude,
+            @RequestParam(required = false) Integer minDepth,
+            @RequestParam(required = false) Integer maxDepth,
+            @RequestParam(defaultValue = "false") boolean followLinks,
+            @RequestParam(defaultValue = "false") boolean sameFileSystem,
+            @RequestParam(required = false) String scanId,
+            @RequestParam(required = false) Integer limit,
+            @RequestParam(required = false) Integer topK,
+            @RequestParam(defaultValue = "size") String sortBy
     ){
         try {
-            List<String> foundFiles = fileScanService.scan(
-                    path, mask, threads,
+            ScanResults foundFiles = fileScanService.scan(
+                    scanId, path, mask, threads,
                     minSizeKB, maxSizeKB,
                     modifiedAfter, modifiedBefore,
-                    containsText
+                    containsText, ScanQuery.WalkOptions.of(exclude, minDepth, maxDepth, followLinks, sameFileSystem),
+                    limit, topK, sortBy
             );
 
             //Оработка сообщения о прерывании
@@ -46,6 +80,12 @@ public class FileScanController {
                 );
             }
 
+            if (foundFiles.isEmpty() && !fileScanService.directoryExists(path)) {
+                return new ResponseEntity<>(
+                        Collections.singletonList(FileScanService.DIRECTORY_NOT_FOUND + path),
+                        HttpStatus.NOT_FOUND
+                );
+            }
             if (foundFiles.isEmpty()){
                 return new ResponseEntity<>(
                         Collections.singletonList("Not found with mask: "+ mask),
@@ -70,10 +110,377 @@ public class FileScanController {
         }
     }
 
-    //Эндпоинт для прерывания сканирования
+    //Потоковый вариант: по строке NDJSON на каждый найденный файл, в конце итоговая строка
+    @GetMapping("/stream")
+    public ResponseEntity<StreamingResponseBody> scanFilesStream(
+            @RequestParam String path,
+            @RequestParam String mask,
+            @RequestParam(defaultValue = "auto") String threads,
+            @RequestParam(required = false) Long minSizeKB,
+            @RequestParam(required = false) Long maxSizeKB,
+            @RequestParam(required = false) String modifiedAfter,
+            @RequestParam(required = false) String modifiedBefore,
+            @RequestParam(required = false) String containsText,
+            @RequestParam(required = false) List<String> exclude,
+            @RequestParam(required = false) Integer minDepth,
+            @RequestParam(required = false) Integer maxDepth,
+            @RequestParam(defaultValue = "false") boolean followLinks,
+            @RequestParam(defaultValue = "false") boolean sameFileSystem,
+            @RequestParam(required = false) String scanId,
+            @RequestParam(required = false) Integer limit
+    ) throws InterruptedException {
+        StreamingResultSink sink = new StreamingResultSink(streamBufferSize, streamStallTimeoutMillis);
+        ScanSession session;
+        try {
+            session = fileScanService.startStreamingScan(
+                    scanId, path, mask, threads,
+                    minSizeKB, maxSizeKB,
+                    modifiedAfter, modifiedBefore,
+                    containsText, ScanQuery.WalkOptions.of(exclude, minDepth, maxDepth, followLinks, sameFileSystem),
+                    limit, sink
+            );
+        }
+        catch (IllegalArgumentException e) {
+            System.err.println("Invalid request parameter: " + e.getMessage());
+            StreamingResponseBody error = out -> writeSummary(out, null, "Invalid request parameter: " + e.getMessage());
+            return ResponseEntity.badRequest().contentType(NDJSON).body(error);
+        }
+
+        StreamingResponseBody body = out -> {
+            JsonGenerator generator = objectMapper.getFactory().createGenerator(out);
+            generator.setRootValueSeparator(null);
+            try {
+                String file;
+                while ((file = sink.next()) != null) {
+                    generator.writeStartObject();
+                    generator.writeStringField("path", file);
+                    generator.writeEndObject();
+                    generator.writeRaw('\n');
+                    // Сбрасываем, когда очередь опустела, чтобы клиент сразу видел найденное
+                    if (!sink.hasBuffered()) {
+                        generator.flush();
+                    }
+                }
+                generator.flush();
+            } catch (IOException e) {
+                // Клиент отключился: останавливаем его сканирование
+                if (session != null) {
+                    session.interrupt();
+                }
+                throw e;
+            } catch (InterruptedException e) {
+                if (session != null) {
+                    session.interrupt();
+                }
+                Thread.currentThread().interrupt();
+                return;
+            }
+            writeSummary(out, session, session == null ? FileScanService.DIRECTORY_NOT_FOUND + path : null);
+        };
+        return ResponseEntity.ok()
+                .header("X-Scan-Id", session != null ? session.id : "")
+                .contentType(NDJSON)
+                .body(body);
+    }
+
+    private void writeSummary(OutputStream out, ScanSession session, String error) throws IOException {
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("type", "summary");
+        summary.put("scanId", session != null ? session.id : null);
+        summary.put("count", session != null ? session.matchCount.sum() : 0);
+        summary.put("elapsedMs", session != null ? System.currentTimeMillis() - session.startedAt : 0);
+        summary.put("interrupted", session != null && session.interrupted);
+        if (error != null) {
+            summary.put("error", error);
+        }
+        out.write(objectMapper.writeValueAsBytes(summary));
+        out.write('\n');
+        out.flush();
+    }
+
+    //Один запрос по нескольким корням: корни сканируют узлы-владельцы, ответ — их слитый
+    //отсортированный NDJSON; упавшие узлы перечисляются в итоговой строке
+    @GetMapping("/distributed")
+    public ResponseEntity<StreamingResponseBody> scanDistributed(
+            @RequestParam("path") List<String> paths,
+            @RequestParam String mask,
+            @RequestParam(defaultValue = "auto") String threads,
+            @RequestParam(required = false) Long minSizeKB,
+            @RequestParam(required = false) Long maxSizeKB,
+            @RequestParam(required = false) String modifiedAfter,
+            @RequestParam(required = false) String modifiedBefore,
+            @RequestParam(required = false) String containsText,
+            @RequestParam(required = false) List<String> exclude,
+            @RequestParam(required = false) Integer minDepth,
+            @RequestParam(required = false) Integer maxDepth,
+            @RequestParam(defaultValue = "false") boolean followLinks,
+            @RequestParam(defaultValue = "false") boolean sameFileSystem,
+            @RequestParam(required = false) String scanId
+    ) {
+        ClusterCoordinator.DistributedScan scan;
+        try {
+            scan = clusterCoordinator.start(
+                    scanId, paths, mask, threads,
+                    minSizeKB, maxSizeKB,
+                    modifiedAfter, modifiedBefore,
+                    containsText, ScanQuery.WalkOptions.of(exclude, minDepth, maxDepth, followLinks, sameFileSystem)
+            );
+        }
+        catch (IllegalArgumentException e) {
+            System.err.println("Invalid request parameter: " + e.getMessage());
+            StreamingResponseBody error = out -> writeSummary(out, null, "Invalid request parameter: " + e.getMessage());
+            return ResponseEntity.badRequest().contentType(NDJSON).body(error);
+        }
+
+        StreamingResponseBody body = out -> {
+            JsonGenerator generator = objectMapper.getFactory().createGenerator(out);
+            generator.setRootValueSeparator(null);
+            try {
+                String file;
+                while ((file = scan.next()) != null) {
+                    generator.writeStartObject();
+                    generator.writeStringField("path", file);
+                    generator.writeEndObject();
+                    generator.writeRaw('\n');
+                }
+                generator.flush();
+
+                Map<String, Object> summary = new LinkedHashMap<>();
+                summary.put("type", "summary");
+                summary.put("scanId", scan.getId());
+                summary.put("count", scan.count());
+                summary.put("elapsedMs", System.currentTimeMillis() - scan.startedAt);
+                summary.put("interrupted", scan.interrupted);
+                summary.put("failures", scan.failures());
+                out.write(objectMapper.writeValueAsBytes(summary));
+                out.write('\n');
+                out.flush();
+            } catch (IOException e) {
+                // Клиент отключился: останавливаем сканирование на всех узлах
+                scan.cancel();
+                throw e;
+            } finally {
+                scan.finish();
+            }
+        };
+        return ResponseEntity.ok()
+                .header("X-Scan-Id", scan.getId())
+                .contentType(NDJSON)
+                .body(body);
+    }
+
+    //Эндпоинт для прерывания сканирования: по id или все текущие
     @GetMapping("/cancel")
-    public ResponseEntity<String> cancelScan() {
-        fileScanService.interruptScan();
-        return new ResponseEntity<>("Scan cancellation initiated.", HttpStatus.OK);
+    public ResponseEntity<String> cancelScan(@RequestParam(required = false) String scanId) {
+        if (scanId == null || scanId.isBlank()) {
+            int cancelled = fileScanService.interruptAllScans();
+            return new ResponseEntity<>("Scan cancellation initiated for " + cancelled + " scan(s).", HttpStatus.OK);
+        }
+        // Распределённый скан отменяется на каждом его узле
+        if (clusterCoordinator.cancel(scanId)) {
+            return new ResponseEntity<>("Distributed scan cancellation initiated for " + scanId + ".", HttpStatus.OK);
+        }
+        if (!fileScanService.interruptScan(scanId)) {
+            return new ResponseEntity<>("No running scan with id " + scanId + ".", HttpStatus.NOT_FOUND);
+        }
+        return new ResponseEntity<>("Scan cancellation initiated for " + scanId + ".", HttpStatus.OK);
+    }
+
+    //Группы одинаковых файлов среди найденных
+    @GetMapping("/duplicates")
+    public ResponseEntity<?> findDuplicates(
+            @RequestParam String path,
+            @RequestParam(defaultValue = "*") String mask,
+            @RequestParam(defaultValue = "auto") String threads,
+            @RequestParam(required = false) Long minSizeKB,
+            @RequestParam(required = false) Long maxSizeKB,
+            @RequestParam(required = false) String modifiedAfter,
+            @RequestParam(required = false) String modifiedBefore,
+            @RequestParam(required = false) String containsText,
+            @RequestParam(required = false) List<String> exclude,
+            @RequestParam(required = false) Integer minDepth,
+            @RequestParam(required = false) Integer maxDepth,
+            @RequestParam(defaultValue = "false") boolean followLinks,
+            @RequestParam(defaultValue = "false") boolean sameFileSystem,
+            @RequestParam(required = false) String scanId
+    ) {
+        try {
+            FileScanService.DuplicateReport report = fileScanService.findDuplicates(
+                    scanId, path, mask, threads,
+                    minSizeKB, maxSizeKB,
+                    modifiedAfter, modifiedBefore,
+                    containsText, ScanQuery.WalkOptions.of(exclude, minDepth, maxDepth, followLinks, sameFileSystem)
+            );
+            if (report == null) {
+                return new ResponseEntity<>(
+                        Collections.singletonList(FileScanService.DIRECTORY_NOT_FOUND + path),
+                        HttpStatus.NOT_FOUND
+                );
+            }
+            return new ResponseEntity<>(report, HttpStatus.OK);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return new ResponseEntity<>(
+                    Collections.singletonList("Server error while scanning: " + e.getMessage()),
+                    HttpStatus.INTERNAL_SERVER_ERROR
+            );
+        }
+        catch (IllegalArgumentException e) {
+            System.err.println("Invalid request parameter: " + e.getMessage());
+            return new ResponseEntity<>(
+                    Collections.singletonList("Invalid request parameter: " + e.getMessage()),
+                    HttpStatus.BAD_REQUEST
+            );
+        }
+    }
+
+    //Только количество, суммарный размер и гистограммы размеров и возраста, без списка путей
+    @GetMapping("/aggregate")
+    public ResponseEntity<?> aggregate(
+            @RequestParam String path,
+            @RequestParam(defaultValue = "*") String mask,
+            @RequestParam(defaultValue = "auto") String threads,
+            @RequestParam(required = false) Long minSizeKB,
+            @RequestParam(required = false) Long maxSizeKB,
+            @RequestParam(required = false) String modifiedAfter,
+            @RequestParam(required = false) String modifiedBefore,
+            @RequestParam(required = false) String containsText,
+            @RequestParam(required = false) List<String> exclude,
+            @RequestParam(required = false) Integer minDepth,
+            @RequestParam(required = false) Integer maxDepth,
+            @RequestParam(defaultValue = "false") boolean followLinks,
+            @RequestParam(defaultValue = "false") boolean sameFileSystem,
+            @RequestParam(required = false) String scanId
+    ) {
+        try {
+            ScanAggregate.Summary summary = fileScanService.aggregate(
+                    scanId, path, mask, threads,
+                    minSizeKB, maxSizeKB,
+                    modifiedAfter, modifiedBefore,
+                    containsText, ScanQuery.WalkOptions.of(exclude, minDepth, maxDepth, followLinks, sameFileSystem)
+            );
+            if (summary == null) {
+                return new ResponseEntity<>(
+                        Collections.singletonList(FileScanService.DIRECTORY_NOT_FOUND + path),
+                        HttpStatus.NOT_FOUND
+                );
+            }
+            return new ResponseEntity<>(summary, HttpStatus.OK);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return new ResponseEntity<>(
+                    Collections.singletonList("Server error while scanning: " + e.getMessage()),
+                    HttpStatus.INTERNAL_SERVER_ERROR
+            );
+        }
+        catch (IllegalArgumentException e) {
+            System.err.println("Invalid request parameter: " + e.getMessage());
+            return new ResponseEntity<>(
+                    Collections.singletonList("Invalid request parameter: " + e.getMessage()),
+                    HttpStatus.BAD_REQUEST
+            );
+        }
+    }
+
+    //Фоновое задание: id возвращается сразу, прогресс — GET /scan/jobs/{id}, результат — страницами
+    @PostMapping("/jobs")
+    public ResponseEntity<?> submitJob(
+            @RequestParam String path,
+            @RequestParam String mask,
+            @RequestParam(defaultValue = "auto") String threads,
+            @RequestParam(required = false) Long minSizeKB,
+            @RequestParam(required = false) Long maxSizeKB,
+            @RequestParam(required = false) String modifiedAfter,
+            @RequestParam(required = false) String modifiedBefore,
+            @RequestParam(required = false) String containsText,
+            @RequestParam(required = false) List<String> exclude,
+            @RequestParam(required = false) Integer minDepth,
+            @RequestParam(required = false) Integer maxDepth,
+            @RequestParam(defaultValue = "false") boolean followLinks,
+            @RequestParam(defaultValue = "false") boolean sameFileSystem,
+            @RequestParam(required = false) Integer limit,
+            @RequestParam(required = false) Integer topK,
+            @RequestParam(defaultValue = "size") String sortBy,
+            @RequestParam(defaultValue = "0") int priority
+    ) {
+        try {
+            ScanJobService.JobStatus job = scanJobService.submit(new ScanJobService.JobRequest(
+                    path, mask, threads,
+                    minSizeKB, maxSizeKB,
+                    modifiedAfter, modifiedBefore,
+                    containsText, ScanQuery.WalkOptions.of(exclude, minDepth, maxDepth, followLinks, sameFileSystem),
+                    limit, topK, sortBy
+            ), priority);
+            return ResponseEntity.accepted()
+                    .header("Location", "/scan/jobs/" + job.id())
+                    .body(job);
+        }
+        catch (IllegalArgumentException e) {
+            System.err.println("Invalid request parameter: " + e.getMessage());
+            return new ResponseEntity<>(
+                    Collections.singletonList("Invalid request parameter: " + e.getMessage()),
+                    HttpStatus.BAD_REQUEST
+            );
+        }
+        catch (IllegalStateException e) {
+            return new ResponseEntity<>(Collections.singletonList(e.getMessage()), HttpStatus.SERVICE_UNAVAILABLE);
+        }
+    }
+
+    @GetMapping("/jobs")
+    public ResponseEntity<List<ScanJobService.JobStatus>> listJobs() {
+        return new ResponseEntity<>(scanJobService.list(), HttpStatus.OK);
+    }
+
+    @GetMapping("/jobs/{id}")
+    public ResponseEntity<?> jobStatus(@PathVariable String id) {
+        ScanJobService.JobStatus job = scanJobService.status(id);
+        if (job == null) {
+            return new ResponseEntity<>(Collections.singletonList("No job with id " + id + "."), HttpStatus.NOT_FOUND);
+        }
+        return new ResponseEntity<>(job, HttpStatus.OK);
+    }
+
+    //Страница результата: nextCursor из ответа передаётся в следующий запрос, null — страниц больше нет
+    @GetMapping("/jobs/{id}/results")
+    public ResponseEntity<?> jobResults(
+            @PathVariable String id,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "1000") int size
+    ) {
+        try {
+            ScanJobService.ResultPage page = scanJobService.results(id, cursor, size);
+            if (page == null) {
+                return new ResponseEntity<>(Collections.singletonList("No job with id " + id + "."), HttpStatus.NOT_FOUND);
+            }
+            return new ResponseEntity<>(page, HttpStatus.OK);
+        }
+        catch (IllegalArgumentException e) {
+            return new ResponseEntity<>(Collections.singletonList(e.getMessage()), HttpStatus.BAD_REQUEST);
+        }
+        catch (IllegalStateException e) {
+            return new ResponseEntity<>(Collections.singletonList(e.getMessage()), HttpStatus.CONFLICT);
+        }
+    }
+
+    @DeleteMapping("/jobs/{id}")
+    public ResponseEntity<?> cancelJob(@PathVariable String id) {
+        ScanJobService.JobStatus job = scanJobService.cancel(id);
+        if (job == null) {
+            return new ResponseEntity<>(Collections.singletonList("No job with id " + id + "."), HttpStatus.NOT_FOUND);
+        }
+        return new ResponseEntity<>(job, HttpStatus.OK);
+    }
+
+    @GetMapping("/cache/stats")
+    public ResponseEntity<ScanCache.CacheStats> cacheStats() {
+        return new ResponseEntity<>(fileScanService.getCacheStats(), HttpStatus.OK);
+    }
+
+    @GetMapping("/active")
+    public ResponseEntity<List<String>> activeScans() {
+        return new ResponseEntity<>(fileScanService.getActiveScanIds(), HttpStatus.OK);
     }
 }
\ No newline at end of file
@@ -1,183 +1,450 @@
 package com.azati.file_scanner;
 
+import jakarta.annotation.PreDestroy;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.io.IOException;
 import java.nio.file.*;
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
+import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.Date;
 import java.util.List;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
-import java.util.concurrent.TimeUnit;
-import java.util.regex.Pattern;
-import java.util.Set;
-import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 
 @Service
 public class FileScanService {
+    // Начало ответа о несуществующем корне; по нему координатор отличает его от пустого результата
+    static final String DIRECTORY_NOT_FOUND = "Directory not found: ";
+
     private final ScanCache scanCache;
-    volatile boolean scanInterrupted = false;
-    public FileScanService(ScanCache scanCache) {
+    private final FileIndex fileIndex;
+    private final ContentIndex contentIndex;
+    private final ConcurrencyTuner concurrencyTuner;
+    private final ScanMetrics metrics;
+    // Общий пул для всех сессий, создаётся один раз на приложение
+    private final ForkJoinPool scanPool;
+    // Справедливая (FIFO) очередь на запуск, когда одновременно идёт слишком много сканов
+    private final Semaphore scanSlots;
+    private final ConcurrentHashMap<String, ScanSession> activeSessions = new ConcurrentHashMap<>();
+    // Отдельный пул для чтения содержимого файлов, размер не зависит от пула обхода
+    private final ExecutorService contentPool;
+    private final int contentThreads;
+    private final int contentWorkersPerScan;
+    private final int contentQueueSize;
+    // Логирование отклонённых файлов: 0 — выключено, N — каждый N-й
+    private final int rejectionLogSampleRate;
+
+    public FileScanService(ScanCache scanCache, FileIndex fileIndex, ContentIndex contentIndex,
+                           ConcurrencyTuner concurrencyTuner, ScanMetrics metrics,
+                           @Value("${file.scanner.pool.size:0}") int poolSize,
+                           @Value("${file.scanner.max-concurrent-scans:8}") int maxConcurrentScans,
+                           @Value("${file.scanner.log.rejections.sample-rate:0}") int rejectionLogSampleRate,
+                           @Value("${file.scanner.content.threads:16}") int contentThreads,
+                           @Value("${file.scanner.content.workers-per-scan:8}") int contentWorkersPerScan,
+                           @Value("${file.scanner.content.queue-size:1024}") int contentQueueSize) {
         this.scanCache = scanCache;
+        this.fileIndex = fileIndex;
+        this.contentIndex = contentIndex;
+        this.concurrencyTuner = concurrencyTuner;
+        this.metrics = metrics;
+        this.rejectionLogSampleRate = rejectionLogSampleRate;
+        int parallelism = poolSize > 0 ? poolSize : Runtime.getRuntime().availableProcessors();
+        this.scanPool = new ForkJoinPool(parallelism);
+        this.scanSlots = new Semaphore(Math.max(1, maxConcurrentScans), true);
+        AtomicInteger contentThreadNumber = new AtomicInteger();
+        this.contentPool = Executors.newFixedThreadPool(Math.max(1, contentThreads), r -> {
+            Thread thread = new Thread(r, "content-check-" + contentThreadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.contentThreads = Math.max(1, contentThreads);
+        this.contentWorkersPerScan = Math.max(1, Math.min(contentWorkersPerScan, contentThreads));
+        this.contentQueueSize = Math.max(1, contentQueueSize);
+
+        metrics.monitorExecutor(scanPool, "scan");
+        metrics.monitorExecutor(contentPool, "content-check");
+        metrics.gauge("scanner.scans.active", "Scans currently running", activeSessions::size);
+        metrics.gauge("scanner.content.queue.depth", "Files waiting for content check across all scans",
+                () -> activeSessions.values().stream()
+                        .mapToInt(session -> session.contentStage != null ? session.contentStage.queued() : 0)
+                        .sum());
+        metrics.gauge("scanner.cache.hit.ratio", "Share of scans answered from ScanCache", scanCache::hitRatio);
     }
 
-    final ConcurrentLinkedQueue<String> foundFiles = new ConcurrentLinkedQueue<>();
-    Pattern currentPattern;
-    ExecutorService currentExecutorService;
-    final Set<Future<?>> runningTasks = new CopyOnWriteArraySet<>();
-
-    private Path scanStartPath;
-
-    Long minFileSize;
-    Long maxFileSize;
-    Date modifiedAfterDate;
-    Date modifiedBeforeDate;
-    String containsText;
-
-    private static final SimpleDateFormat DATE_FORMAT = new SimpleDateFormat("yyyy-MM-dd");
-    private static final long KB_TO_BYTES = 1024L;
-
+    public ScanResults scan(String directoryPath, String fileMask, String threadsInput,
+                             Long minSizeKB, Long maxSizeKB,
+                             String modifiedAfter, String modifiedBefore,
+                             String containsText) throws IOException, InterruptedException {
+        return scan(null, directoryPath, fileMask, threadsInput,
+                minSizeKB, maxSizeKB, modifiedAfter, modifiedBefore, containsText);
+    }
 
-    public List<String> scan(String directoryPath, String fileMask, String threadsInput,
+    public ScanResults scan(String scanId, String directoryPath, String fileMask, String threadsInput,
                              Long minSizeKB, Long maxSizeKB,
                              String modifiedAfter, String modifiedBefore,
                              String containsText) throws IOException, InterruptedException {
+        return scan(scanId, directoryPath, fileMask, threadsInput,
+                minSizeKB, maxSizeKB, modifiedAfter, modifiedBefore, containsText, ScanQuery.WalkOptions.NONE, null, null, null);
+    }
+
+    // limit — любые N совпадений, обход останавливается на N-м; topK — N самых больших
+    // или самых новых (sortBy=size|modified) через ограниченные кучи потоков.
+    // Такие ответы — часть результата, поэтому в кэш они не попадают, но из кэша отвечаются.
+    public ScanResults scan(String scanId, String directoryPath, String fileMask, String threadsInput,
+                             Long minSizeKB, Long maxSizeKB,
+                             String modifiedAfter, String modifiedBefore,
+                             String containsText, ScanQuery.WalkOptions walk,
+                             Integer limit, Integer topK, String sortBy) throws IOException, InterruptedException {
+        return scan(scanId, directoryPath, fileMask, threadsInput,
+                minSizeKB, maxSizeKB, modifiedAfter, modifiedBefore, containsText, walk, limit, topK, sortBy, null);
+    }
 
-        String cacheKey = scanCache.generateCacheKey(directoryPath, fileMask, minSizeKB, maxSizeKB, modifiedAfter, modifiedBefore, containsText);
+    // onStart получает сессию до начала обхода: через неё фоновое задание видит прогресс.
+    // При ответе из кэша сессии нет и onStart не вызывается.
+    public ScanResults scan(String scanId, String directoryPath, String fileMask, String threadsInput,
+                             Long minSizeKB, Long maxSizeKB,
+                             String modifiedAfter, String modifiedBefore,
+                             String containsText, ScanQuery.WalkOptions walk,
+                             Integer limit, Integer topK, String sortBy,
+                             Consumer<ScanSession> onStart) throws IOException, InterruptedException {
+
+        ScanQuery query = ScanQuery.of(directoryPath, fileMask, minSizeKB, maxSizeKB, modifiedAfter, modifiedBefore, containsText, walk);
+        checkResultOptions(limit, topK, sortBy);
+        ScanResults.Order topOrder = topK != null ? parseOrder(sortBy) : null;
+
+        ScanResults cachedFiles = scanCache.find(query);
+        // Размеры и даты хранятся не в каждом результате; без нужного ключа topK сканирует заново
+        if (cachedFiles != null && (topK == null || cachedFiles.has(topOrder))) {
+            if (limit != null) {
+                return cachedFiles.limit(limit);
+            }
+            return topK != null ? cachedFiles.top(topK, topOrder) : cachedFiles;
+        }
 
-        ScanCache.CacheEntry cachedResult = scanCache.getValidCacheEntry(cacheKey);
-        if (cachedResult != null) {
-            System.out.println("Returning result from cache for key: " + cacheKey);
-            this.scanInterrupted = false;
-            return cachedResult.files;
+        TopKCollector topCollector = topK != null ? new TopKCollector(query.root, topK, topOrder) : null;
+        ScanSession session = createSession(scanId, query, threadsInput, topCollector);
+        if (session == null) {
+            return ScanResults.EMPTY;
+        }
+        if (limit != null) {
+            session.limit = limit;
+        }
+        if (onStart != null) {
+            onStart.accept(session);
         }
+        runExclusive(session);
 
-        foundFiles.clear();
-        runningTasks.clear();
-        scanInterrupted = false;
+        if (topCollector != null) {
+            return topCollector.build(scanPool);
+        }
+        ScanResults sortedFiles = session.results.build(scanPool);
+        if (session.interrupted) {
+            System.out.println("Scan " + session.id + " was interrupted by user. Returning partial results.");
+            // Не кэшируем прерванные результаты
+            return sortedFiles;
+        }
+        if (session.limitReached()) {
+            // Обход остановлен на limit-м совпадении: это не весь результат
+            return sortedFiles;
+        }
 
+        scanCache.put(query, sortedFiles);
 
-        this.minFileSize = (minSizeKB != null) ? minSizeKB * KB_TO_BYTES : null;
-        this.maxFileSize = (maxSizeKB != null) ? maxSizeKB * KB_TO_BYTES : null;
-        this.containsText = containsText;
+        return sortedFiles;
+    }
 
-        try {
-            this.modifiedAfterDate = (modifiedAfter != null && !modifiedAfter.isEmpty()) ? DATE_FORMAT.parse(modifiedAfter) : null;
-            this.modifiedBeforeDate = (modifiedBefore != null && !modifiedBefore.isEmpty()) ? DATE_FORMAT.parse(modifiedBefore) : null;
-        } catch (ParseException e) {
-            throw new IllegalArgumentException("Invalid date format. Please use YYYY-MM-DD for modifiedAfter and modifiedBefore.", e);
+    // Только счётчики и гистограммы: пути не хранятся и не сортируются.
+    // Возвращает null, если директории нет.
+    public ScanAggregate.Summary aggregate(String scanId, String directoryPath, String fileMask, String threadsInput,
+                                           Long minSizeKB, Long maxSizeKB,
+                                           String modifiedAfter, String modifiedBefore,
+                                           String containsText, ScanQuery.WalkOptions walk) throws InterruptedException {
+        ScanQuery query = ScanQuery.of(directoryPath, fileMask, minSizeKB, maxSizeKB, modifiedAfter, modifiedBefore, containsText, walk);
+        ScanResults cachedFiles = scanCache.find(query);
+        if (cachedFiles != null && cachedFiles.hasSizes() && cachedFiles.hasLastModified()) {
+            return ScanAggregate.of(cachedFiles).summary(null, false);
         }
 
+        ScanAggregate aggregate = new ScanAggregate();
+        ScanSession session = createSession(scanId, query, threadsInput, aggregate);
+        if (session == null) {
+            return null;
+        }
+        runExclusive(session);
+        return aggregate.summary(session.id, session.interrupted);
+    }
 
-        int numThreads;
-        if (threadsInput.equalsIgnoreCase("auto")) {
-            numThreads = Runtime.getRuntime().availableProcessors();
-        } else {
+    // Ждёт слот, выполняет сессию и снимает её с учёта
+    private void runExclusive(ScanSession session) throws InterruptedException {
+        try {
+            scanSlots.acquire();
             try {
-                numThreads = Integer.parseInt(threadsInput);
-                if (numThreads <= 0) {
-                    System.err.println("Numbers of threads can't be 0 or negative. Using available processors.");
-                    numThreads = Runtime.getRuntime().availableProcessors();
+                if (!session.interrupted) {
+                    runSession(session);
                 }
-            } catch (NumberFormatException e) {
-                System.err.println("Incorrect format for threads. Using available processors.");
-                numThreads = Runtime.getRuntime().availableProcessors();
+            } finally {
+                scanSlots.release();
             }
+        } finally {
+            activeSessions.remove(session.id, session);
+        }
+    }
+
+    // Проверка limit/topK/sortBy до запуска, в том числе при постановке задания в очередь
+    static void checkResultOptions(Integer limit, Integer topK, String sortBy) {
+        checkPositive(limit, "limit");
+        checkPositive(topK, "topK");
+        if (limit != null && topK != null) {
+            throw new IllegalArgumentException("limit and topK cannot be combined.");
         }
+        if (topK != null) {
+            parseOrder(sortBy);
+        }
+    }
 
-        System.out.println("Directory for scan: " + directoryPath);
-        System.out.println("File mask: " + fileMask);
-        System.out.println("Threads: " + numThreads);
-        System.out.println("Min Size: " + (minSizeKB != null ? minSizeKB + " KB" : "N/A"));
-        System.out.println("Max Size: " + (maxSizeKB != null ? maxSizeKB + " KB" : "N/A"));
-        System.out.println("Modified After: " + (modifiedAfterDate != null ? DATE_FORMAT.format(modifiedAfterDate) : "N/A"));
-        System.out.println("Modified Before: " + (modifiedBeforeDate != null ? DATE_FORMAT.format(modifiedBeforeDate) : "N/A"));
-        System.out.println("Contains Text: " + (containsText != null && !containsText.isEmpty() ? "'" + containsText + "'" : "N/A"));
+    private static void checkPositive(Integer value, String name) {
+        if (value != null && value <= 0) {
+            throw new IllegalArgumentException(name + " must be positive.");
+        }
+    }
 
+    private static ScanResults.Order parseOrder(String sortBy) {
+        if (sortBy == null || sortBy.equalsIgnoreCase("size")) {
+            return ScanResults.Order.SIZE;
+        }
+        if (sortBy.equalsIgnoreCase("modified")) {
+            return ScanResults.Order.MODIFIED;
+        }
+        throw new IllegalArgumentException("sortBy must be 'size' or 'modified'.");
+    }
 
-        String regex = fileMask.replace(".", "\\.").replace("*", ".*").replace("?", ".");
-        this.currentPattern = Pattern.compile(regex, Pattern.CASE_INSENSITIVE);
-        this.currentExecutorService = Executors.newFixedThreadPool(numThreads);
+    // Запускает сканирование без ожидания: найденные файлы сразу уходят в sink,
+    // без сортировки и кэширования; с limit поток заканчивается на N-м файле.
+    // Возвращает null, если директории нет.
+    public ScanSession startStreamingScan(String scanId, String directoryPath, String fileMask, String threadsInput,
+                                          Long minSizeKB, Long maxSizeKB,
+                                          String modifiedAfter, String modifiedBefore,
+                                          String containsText, ScanQuery.WalkOptions walk,
+                                          Integer limit, StreamingResultSink sink) throws InterruptedException {
+        ScanQuery query = ScanQuery.of(directoryPath, fileMask, minSizeKB, maxSizeKB, modifiedAfter, modifiedBefore, containsText, walk);
+        checkPositive(limit, "limit");
+        ScanSession session = createSession(scanId, query, threadsInput, sink);
+        if (session == null) {
+            sink.finish();
+            return null;
+        }
+        if (limit != null) {
+            session.limit = limit;
+        }
+        sink.attach(session);
 
         try {
-            this.scanStartPath = Paths.get(directoryPath);
-
-            if (!Files.exists(scanStartPath) || !Files.isDirectory(scanStartPath)) {
-                return Collections.emptyList();
+            scanSlots.acquire();
+        } catch (InterruptedException e) {
+            activeSessions.remove(session.id, session);
+            throw e;
+        }
+        ForkJoinTask<?> task = ForkJoinTask.adapt(() -> {
+            try {
+                if (!session.interrupted) {
+                    runSession(session);
+                }
+            } finally {
+                scanSlots.release();
+                activeSessions.remove(session.id, session);
+                sink.finish();
             }
+        });
+        scanPool.execute(task);
+        return session;
+    }
 
-            FileSearchVisitor initialVisitor = new FileSearchVisitor(this, true, scanStartPath);
-            Files.walkFileTree(scanStartPath, initialVisitor);
-
-
-            currentExecutorService.shutdown();
-
-            while (!runningTasks.isEmpty() && !scanInterrupted) {
-                Set<Future<?>> tasksToComplete = new CopyOnWriteArraySet<>(runningTasks);
-                for (Future<?> future : tasksToComplete) {
-                    if (scanInterrupted) {
-                        future.cancel(true);
-                        runningTasks.remove(future);
-                        continue;
-                    }
-                    if (future.isDone() || future.isCancelled()) {
-                        runningTasks.remove(future);
-                    } else {
-                        try {
-                            future.get(100, TimeUnit.MILLISECONDS);
-                        } catch (java.util.concurrent.TimeoutException e) {
-                        } catch (Exception e) {
-                            System.err.println("DEBUG ERROR: Error while waiting for task: " + e.getMessage());
-                            runningTasks.remove(future);
-                        }
-                    }
+    public record DuplicateReport(String scanId, long filesScanned, long bytesRead, boolean interrupted,
+                                  List<DuplicateFinder.DuplicateGroup> groups) {
+    }
+
+    // Дубликаты среди файлов, прошедших обычные фильтры. Хэширование идёт в том же
+    // пуле и под тем же слотом, что и обход. Возвращает null, если директории нет.
+    public DuplicateReport findDuplicates(String scanId, String directoryPath, String fileMask, String threadsInput,
+                                          Long minSizeKB, Long maxSizeKB,
+                                          String modifiedAfter, String modifiedBefore,
+                                          String containsText, ScanQuery.WalkOptions walk) throws InterruptedException {
+        ScanQuery query = ScanQuery.of(directoryPath, fileMask, minSizeKB, maxSizeKB, modifiedAfter, modifiedBefore, containsText, walk);
+        // Дубликаты группируются по размеру, даты не нужны
+        ResultCollector collector = new ResultCollector(query.root, true, false);
+        ScanSession session = createSession(scanId, query, threadsInput, collector);
+        if (session == null) {
+            return null;
+        }
+
+        List<DuplicateFinder.DuplicateGroup> groups = Collections.emptyList();
+        try {
+            scanSlots.acquire();
+            try {
+                if (!session.interrupted) {
+                    runSession(session);
                 }
-                if (!runningTasks.isEmpty() && !scanInterrupted) {
-                    Thread.sleep(50);
+                if (!session.interrupted) {
+                    ScanResults found = collector.build(scanPool);
+                    DuplicateFinder finder = new DuplicateFinder(session);
+                    groups = scanPool.invoke(ForkJoinTask.adapt(() -> finder.find(found)));
                 }
+            } finally {
+                scanSlots.release();
             }
+        } finally {
+            activeSessions.remove(session.id, session);
+        }
+        if (session.interrupted) {
+            System.out.println("Duplicate search " + session.id + " was interrupted by user.");
+            groups = Collections.emptyList();
+        }
+        return new DuplicateReport(session.id, session.matchCount.sum(), session.bytesRead.sum(), session.interrupted, groups);
+    }
 
-            boolean terminated = currentExecutorService.awaitTermination(1, TimeUnit.MINUTES);
-            if (!terminated) {
-                System.err.println("ExecutorService did not terminate in 1 minute.");
-            }
+    // Пустой результат scan — это и «ничего не найдено», и «нет директории»; различает их этот метод
+    public boolean directoryExists(String directoryPath) {
+        return Files.isDirectory(Paths.get(directoryPath).toAbsolutePath().normalize());
+    }
+
+    private ScanSession createSession(String scanId, ScanQuery query, String threadsInput, ScanResultSink sink) {
+        boolean adaptive = "adaptive".equalsIgnoreCase(threadsInput);
+        int numThreads = adaptive
+                ? concurrencyTuner.initialLevel(query.root, scanPool.getParallelism())
+                : resolveThreads(threadsInput);
+        if (scanId == null || scanId.isBlank()) {
+            scanId = UUID.randomUUID().toString();
+        }
 
-            if (scanInterrupted) {
-                System.out.println("Scan was interrupted by user. Returning partial results.");
-                // Не кэшируем прерванные результаты
-                return new ArrayList<>(foundFiles);
+        System.out.println("Scan id: " + scanId);
+        System.out.println("Directory for scan: " + query.root);
+        System.out.println("File mask: " + query.fileMask);
+        System.out.println("Threads: " + (adaptive ? "adaptive, starting at " + numThreads : numThreads));
+        System.out.println("Min Size: " + (query.minFileSize != null ? query.minFileSize + " bytes" : "N/A"));
+        System.out.println("Max Size: " + (query.maxFileSize != null ? query.maxFileSize + " bytes" : "N/A"));
+        System.out.println("Modified After: " + (query.modifiedAfterMillis != null ? Instant.ofEpochMilli(query.modifiedAfterMillis) : "N/A"));
+        System.out.println("Modified Before: " + (query.modifiedBeforeMillis != null ? Instant.ofEpochMilli(query.modifiedBeforeMillis) : "N/A"));
+        System.out.println("Contains Text: " + (query.containsText != null ? "'" + query.containsText + "'" : "N/A"));
+        System.out.println("Walk: " + (query.walk.equals(ScanQuery.WalkOptions.NONE) ? "N/A" : query.walk));
+
+        if (!Files.exists(query.root) || !Files.isDirectory(query.root)) {
+            return null;
+        }
+
+        ScanSession session = new ScanSession(scanId, query,
+                new ScanFilter(query, rejectionLogSampleRate, metrics), numThreads, sink, metrics);
+        session.adaptive = adaptive;
+        if (session.filter.needsContent()) {
+            session.contentStage = new ContentCheckStage(session, contentPool, contentWorkersPerScan, contentQueueSize);
+            // Индекс хранит атрибуты самих ссылок, а с followLinks обход видит их цели
+            if (!query.walk.followLinks()) {
+                session.contentPrefilter = contentIndex.prefilter(query.root, query.containsText);
             }
+        }
+        if (activeSessions.putIfAbsent(scanId, session) != null) {
+            throw new IllegalArgumentException("Scan with id " + scanId + " is already running.");
+        }
+        return session;
+    }
+
+    // Обход идёт в scanPool, проверка содержимого (если нужна) — параллельно в contentPool
+    private void runSession(ScanSession session) {
+        // Индекс не знает, куда ведут ссылки и где границы файловых систем
+        ScanQuery.WalkOptions walk = session.query.walk;
+        FileIndex.IndexedRoot indexedRoot = walk.followLinks() || walk.sameFileSystem() ? null : fileIndex.find(session.startPath);
+        Timer.Sample sample = metrics.startScan();
+        ContentCheckStage contentStage = session.contentStage;
+        if (contentStage != null) {
+            contentStage.start();
+        }
+        if (session.adaptive) {
+            concurrencyTuner.register(session, scanPool.getParallelism(), contentThreads);
+        }
+        try {
+            scanPool.invoke(rootTask(session, indexedRoot));
         } finally {
-            if (currentExecutorService != null && !currentExecutorService.isShutdown()) {
-                currentExecutorService.shutdownNow();
+            if (contentStage != null) {
+                contentStage.finishAndAwait();
+            }
+            if (session.adaptive) {
+                concurrencyTuner.unregister(session);
             }
+            metrics.scanFinished(sample, indexedRoot != null ? "index" : "walk", session.interrupted);
         }
+    }
 
-        List<String> sortedFiles = new ArrayList<>(foundFiles);
-        Collections.sort(sortedFiles);
-
-        scanCache.put(cacheKey, sortedFiles);
+    private ForkJoinTask<?> rootTask(ScanSession session, FileIndex.IndexedRoot indexedRoot) {
+        FileSearchVisitor visitor = new FileSearchVisitor(session);
+        if (indexedRoot != null) {
+            // Маска, размер и дата отвечаются из индекса без обхода диска
+            System.out.println("Answering scan " + session.id + " from file index of " + indexedRoot.root);
+            return ForkJoinTask.adapt(() -> fileIndex.forEachFile(indexedRoot, session.startPath, visitor));
+        }
+        return new DirectoryScanTask(session, visitor, session.startPath);
+    }
 
-        return sortedFiles;
+    private int resolveThreads(String threadsInput) {
+        int maxThreads = scanPool.getParallelism();
+        if (threadsInput == null || threadsInput.equalsIgnoreCase("auto")) {
+            return maxThreads;
+        }
+        try {
+            int numThreads = Integer.parseInt(threadsInput);
+            if (numThreads <= 0) {
+                System.err.println("Numbers of threads can't be 0 or negative. Using available processors.");
+                return maxThreads;
+            }
+            return Math.min(numThreads, maxThreads);
+        } catch (NumberFormatException e) {
+            System.err.println("Incorrect format for threads. Using available processors.");
+            return maxThreads;
+        }
     }
 
-    public void interruptScan() {
-        this.scanInterrupted = true;
-        if (currentExecutorService != null && !currentExecutorService.isShutdown()) {
-            currentExecutorService.shutdownNow();
-            System.out.println("Attempted to forcefully shut down executor service.");
+    // Прерывает одну сессию по id
+    public boolean interruptScan(String scanId) {
+        ScanSession session = activeSessions.get(scanId);
+        if (session == null) {
+            return false;
         }
-        for (Future<?> future : runningTasks) {
-            future.cancel(true);
+        session.interrupt();
+        System.out.println("Scan interruption requested for " + scanId + ".");
+        return true;
+    }
+
+    // Прерывает все идущие сессии
+    public int interruptAllScans() {
+        int count = 0;
+        for (ScanSession session : activeSessions.values()) {
+            session.interrupt();
+            count++;
         }
-        runningTasks.clear();
-        System.out.println("Scan interruption requested. All tasks cancelled.");
-        scanCache.clear();
+        System.out.println("Scan interruption requested. " + count + " scan(s) cancelled.");
+        return count;
+    }
+
+    public ScanCache.CacheStats getCacheStats() {
+        return scanCache.stats();
+    }
+
+    public List<String> getActiveScanIds() {
+        return new ArrayList<>(activeSessions.keySet());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        interruptAllScans();
+        scanPool.shutdownNow();
+        contentPool.shutdownNow();
     }
-}
\ No newline at end of file
+}
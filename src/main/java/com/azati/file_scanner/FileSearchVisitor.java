@@ -2,124 +2,76 @@ package com.azati.file_scanner;
 
 import java.io.IOException;
 import java.nio.file.FileVisitResult;
-import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.SimpleFileVisitor;
 import java.nio.file.attribute.BasicFileAttributes;
-import java.util.concurrent.Future;
-import java.util.regex.Matcher;
-import java.nio.charset.StandardCharsets;
-import java.util.Date;
 
 public class FileSearchVisitor extends SimpleFileVisitor<Path> {
-    private final FileScanService parentService;
-    private final boolean isRootForParallelization;
-    private final Path visitorRootPath;
+    private final ScanSession session;
 
-    public FileSearchVisitor(FileScanService parentService, boolean isRootForParallelization, Path visitorRootPath) {
-        this.parentService = parentService;
-        this.isRootForParallelization = isRootForParallelization;
-        this.visitorRootPath = visitorRootPath;
+    public FileSearchVisitor(ScanSession session) {
+        this.session = session;
     }
 
     @Override
     public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
-        if (parentService.scanInterrupted) {
-            System.out.println("Scan interrupted for file: " + file.toAbsolutePath());
+        if (session.stopped) {
             return FileVisitResult.TERMINATE; // Прерываем обход
         }
-
-        String fileName = file.getFileName().toString();
-        Matcher matcher = parentService.currentPattern.matcher(fileName);
-
-        if (!matcher.matches()) {
-            System.out.println("File '" + fileName + "' does not match the mask '" + parentService.currentPattern.pattern() + "'");
+        if (!session.walk.acceptsFile(file)) {
+            session.metrics.rejected(ScanMetrics.Rejection.EXCLUDED);
             return FileVisitResult.CONTINUE;
         }
 
-        try {
-            long fileSize = attrs.size(); // размер файла в байтах
-            if (parentService.minFileSize != null && fileSize < parentService.minFileSize) {
-                System.out.println("File '" + fileName + "' ignored: size " + fileSize + " bytes is less than minSize " + parentService.minFileSize + " bytes");
-                return FileVisitResult.CONTINUE;
-            }
-            if (parentService.maxFileSize != null && fileSize > parentService.maxFileSize) {
-                System.out.println("File '" + fileName + "' ignored: size " + fileSize + " bytes is greater than maxSize " + parentService.maxFileSize + " bytes");
-                return FileVisitResult.CONTINUE;
-            }
-        } catch (Exception e) {
-            System.err.println("Error getting file size for " + file.toAbsolutePath() + ": " + e.getMessage());
+        long fileSize = attrs.size();
+        long lastModifiedMillis = attrs.lastModifiedTime().toMillis();
+        if (session.filter.acceptsMetadata(file, fileSize, lastModifiedMillis)) {
+            accept(file.toAbsolutePath(), fileSize, lastModifiedMillis);
         }
+        return FileVisitResult.CONTINUE;
+    }
 
-
-        try {
-            Date lastModified = Date.from(attrs.lastModifiedTime().toInstant());
-
-            if (parentService.modifiedAfterDate != null && lastModified.before(parentService.modifiedAfterDate)) {
-                System.out.println("File '" + fileName + "' ignored: modified " + lastModified + " is before " + parentService.modifiedAfterDate);
-                return FileVisitResult.CONTINUE;
-            }
-            if (parentService.modifiedBeforeDate != null && lastModified.after(parentService.modifiedBeforeDate)) {
-                System.out.println("File '" + fileName + "' ignored: modified " + lastModified + " is after " + parentService.modifiedBeforeDate);
-                return FileVisitResult.CONTINUE;
-            }
-        } catch (Exception e) {
-            System.err.println("Error getting last modified time for " + file.toAbsolutePath() + ": " + e.getMessage());
+    // Файл из индекса метаданных: размер и дата уже известны, на диск идём только за содержимым
+    public void visitIndexedFile(Path file, long fileSize, long lastModifiedMillis) {
+        if (session.stopped) {
+            return;
         }
+        session.filesVisited(1);
+        if (!session.walk.acceptsIndexedFile(file)) {
+            session.metrics.rejected(ScanMetrics.Rejection.EXCLUDED);
+            return;
+        }
+        if (session.filter.acceptsMetadata(file, fileSize, lastModifiedMillis)) {
+            accept(file, fileSize, lastModifiedMillis);
+        }
+    }
 
-
-        if (parentService.containsText != null && !parentService.containsText.isEmpty()) {
-            boolean isTextFile = fileName.toLowerCase().endsWith(".txt") ||
-                    fileName.toLowerCase().endsWith(".log") ||
-                    fileName.toLowerCase().endsWith(".csv") ||
-                    fileName.toLowerCase().endsWith(".json") ||
-                    fileName.toLowerCase().endsWith(".xml") ||
-                    fileName.toLowerCase().endsWith(".html") ||
-                    fileName.toLowerCase().endsWith(".java") ||
-                    fileName.toLowerCase().endsWith(".py") ||
-                    fileName.toLowerCase().endsWith(".md") ;
-            if (isTextFile) {
-                try {
-                    String content = new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
-                    if (!content.contains(parentService.containsText)) {
-                        System.out.println("File '" + fileName + "'does not contain text '" + parentService.containsText + "'");
-                        return FileVisitResult.CONTINUE;
-                    }
-                } catch (IOException e) {
-                    System.err.println("Error reading content of file " + file.toAbsolutePath() + ": " + e.getMessage());
-                    return FileVisitResult.CONTINUE;
-                } catch (OutOfMemoryError e) {
-                    System.err.println("Memory error reading large file " + file.toAbsolutePath() + ". Skipping content search.");
-                    return FileVisitResult.CONTINUE;
-                }
-            } else {
-                return FileVisitResult.CONTINUE;
+    // Файлы, которым нужна проверка содержимого, уходят на следующий этап конвейера
+    private void accept(Path file, long fileSize, long lastModifiedMillis) {
+        if (session.contentStage != null) {
+            // Файлы, в которых по индексу текста точно нет, даже не открываем
+            // Архивы индекс видит в сжатом виде, поэтому для них он ничего не говорит
+            if (session.contentPrefilter != null && !ScanFilter.isArchive(file.getFileName().toString())
+                    && !session.contentPrefilter.mayContain(file, fileSize, lastModifiedMillis)) {
+                session.metrics.rejected(ScanMetrics.Rejection.CONTENT_INDEX);
+                return;
             }
+            session.contentStage.submit(file, fileSize, lastModifiedMillis);
+        } else {
+            session.addResult(file.toString(), fileSize, lastModifiedMillis);
         }
-
-        parentService.foundFiles.add(file.toAbsolutePath().toString());
-        return FileVisitResult.CONTINUE;
     }
 
     @Override
     public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
-        if (parentService.scanInterrupted) { //Прерывание потоков
+        if (session.stopped) { //Прерывание потоков или набран limit
             System.out.println("Scan interrupted for directory: " + dir.toAbsolutePath());
             return FileVisitResult.TERMINATE;
         }
-
-        if (isRootForParallelization) {
-            if (!dir.equals(visitorRootPath)) {
-                Future<?> future = parentService.currentExecutorService.submit(() -> {
-                    try {
-                        Files.walkFileTree(dir, new FileSearchVisitor(parentService, false, dir));
-                    } catch (IOException e) {
-                        System.err.println("Threaded walk error: " + dir.toAbsolutePath() + " - " + e.getMessage());
-                    }
-                });
-                parentService.runningTasks.add(future);
-                return FileVisitResult.SKIP_SUBTREE;
-            }
+        // Исключённое поддерево, предел глубины, другая файловая система: не открываем вовсе
+        if (!session.walk.entersDirectory(dir)) {
+            session.metrics.directoryPruned();
+            return FileVisitResult.SKIP_SUBTREE;
         }
         return FileVisitResult.CONTINUE;
     }
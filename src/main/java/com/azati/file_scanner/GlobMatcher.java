@@ -0,0 +1,98 @@
+package com.azati.file_scanner;
+
+// Сопоставление имени файла с маской (* и ?) без регулярных выражений и без
+// выделения памяти. Частые маски (*, *.txt, name.*, точное имя) проверяются отдельно.
+public class GlobMatcher {
+    private enum Kind { ANY, LITERAL, SUFFIX, PREFIX, GENERAL }
+
+    private final String mask;
+    private final Kind kind;
+    // Для LITERAL / SUFFIX / PREFIX: часть маски без звёздочки
+    private final String literal;
+
+    public GlobMatcher(String mask) {
+        this.mask = mask;
+        int stars = count(mask, '*');
+        boolean hasQuestion = mask.indexOf('?') >= 0;
+
+        if (mask.equals("*")) {
+            kind = Kind.ANY;
+            literal = "";
+        } else if (stars == 0 && !hasQuestion) {
+            kind = Kind.LITERAL;
+            literal = mask;
+        } else if (stars == 1 && !hasQuestion && mask.startsWith("*")) {
+            kind = Kind.SUFFIX;
+            literal = mask.substring(1);
+        } else if (stars == 1 && !hasQuestion && mask.endsWith("*")) {
+            kind = Kind.PREFIX;
+            literal = mask.substring(0, mask.length() - 1);
+        } else {
+            kind = Kind.GENERAL;
+            literal = null;
+        }
+    }
+
+    public boolean matches(String name) {
+        switch (kind) {
+            case ANY:
+                return true;
+            case LITERAL:
+                return name.equalsIgnoreCase(literal);
+            case SUFFIX:
+                return name.length() >= literal.length()
+                        && name.regionMatches(true, name.length() - literal.length(), literal, 0, literal.length());
+            case PREFIX:
+                return name.regionMatches(true, 0, literal, 0, literal.length());
+            default:
+                return matchesGeneral(name);
+        }
+    }
+
+    // Жадный проход с возвратом к последней звёздочке, O(n*m) в худшем случае
+    private boolean matchesGeneral(String name) {
+        int n = 0;
+        int m = 0;
+        int starMask = -1;
+        int starName = 0;
+        while (n < name.length()) {
+            if (m < mask.length() && (mask.charAt(m) == '?' || sameChar(mask.charAt(m), name.charAt(n)))) {
+                n++;
+                m++;
+            } else if (m < mask.length() && mask.charAt(m) == '*') {
+                starMask = m++;
+                starName = n;
+            } else if (starMask >= 0) {
+                m = starMask + 1;
+                n = ++starName;
+            } else {
+                return false;
+            }
+        }
+        while (m < mask.length() && mask.charAt(m) == '*') {
+            m++;
+        }
+        return m == mask.length();
+    }
+
+    private static boolean sameChar(char a, char b) {
+        return a == b
+                || Character.toUpperCase(a) == Character.toUpperCase(b)
+                || Character.toLowerCase(a) == Character.toLowerCase(b);
+    }
+
+    private static int count(String value, char c) {
+        int count = 0;
+        for (int i = 0; i < value.length(); i++) {
+            if (value.charAt(i) == c) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public String toString() {
+        return mask;
+    }
+}
@@ -0,0 +1,144 @@
+package com.azati.file_scanner;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+
+// Приёмник результатов для обычного /scan. У каждого потока свой буфер без синхронизации;
+// файлы одной директории приходят подряд (пакет EntryBatchTask), поэтому каталог
+// записывается один раз на серию, а у файла хранится только имя в UTF-8.
+// Размер и дата хранятся, только если их попросили: это две трети памяти записи.
+public class ResultCollector implements ScanResultSink {
+    private final String rootPrefix;
+    private final char separator;
+    private final boolean keepSizes;
+    private final boolean keepLastModified;
+    private final ConcurrentHashMap<Thread, Buffer> buffers = new ConcurrentHashMap<>();
+
+    public ResultCollector(Path root) {
+        this(root, true, true);
+    }
+
+    public ResultCollector(Path root, boolean keepSizes, boolean keepLastModified) {
+        String separator = root.getFileSystem().getSeparator();
+        String rootString = root.toString();
+        this.rootPrefix = rootString.endsWith(separator) ? rootString : rootString + separator;
+        this.separator = separator.charAt(0);
+        this.keepSizes = keepSizes;
+        this.keepLastModified = keepLastModified;
+    }
+
+    @Override
+    public void accept(String path, long size, long lastModified) {
+        buffers.computeIfAbsent(Thread.currentThread(), thread -> new Buffer()).add(path, size, lastModified);
+    }
+
+    // Сливает буферы потоков и сортирует результат в пуле
+    public ScanResults build(ForkJoinPool pool) {
+        List<Buffer> parts = new ArrayList<>(buffers.values());
+        int count = 0;
+        int namesLength = 0;
+        for (Buffer part : parts) {
+            count += part.count;
+            namesLength += part.namesLength;
+        }
+        if (count == 0) {
+            return ScanResults.EMPTY;
+        }
+
+        // Одинаковые каталоги из разных буферов получают один номер
+        Map<String, Integer> dirIdsByName = new HashMap<>();
+        List<byte[]> dirs = new ArrayList<>();
+        byte[] names = new byte[namesLength];
+        int[] nameStarts = new int[count + 1];
+        int[] dirIds = new int[count];
+        long[] sizes = keepSizes ? new long[count] : null;
+        long[] lastModified = keepLastModified ? new long[count] : null;
+        int entry = 0;
+        int nameOffset = 0;
+        for (Buffer part : parts) {
+            int[] localToGlobal = new int[part.dirs.size()];
+            for (int i = 0; i < localToGlobal.length; i++) {
+                String dir = part.dirs.get(i);
+                localToGlobal[i] = dirIdsByName.computeIfAbsent(dir, d -> {
+                    dirs.add(d.getBytes(StandardCharsets.UTF_8));
+                    return dirs.size() - 1;
+                });
+            }
+            System.arraycopy(part.names, 0, names, nameOffset, part.namesLength);
+            for (int i = 0; i < part.count; i++) {
+                nameStarts[entry] = nameOffset + part.nameStarts[i];
+                dirIds[entry] = localToGlobal[part.dirIds[i]];
+                if (sizes != null) {
+                    sizes[entry] = part.sizes[i];
+                }
+                if (lastModified != null) {
+                    lastModified[entry] = part.lastModified[i];
+                }
+                entry++;
+            }
+            nameOffset += part.namesLength;
+        }
+        nameStarts[count] = nameOffset;
+
+        return new ScanResults(rootPrefix, separator, dirs.toArray(new byte[0][]), names, nameStarts,
+                dirIds, sizes, lastModified, null).sorted(pool);
+    }
+
+    // Буфер одного потока; используется только своим потоком до build()
+    private final class Buffer {
+        final List<String> dirs = new ArrayList<>();
+        String lastDir;
+        byte[] names = new byte[4096];
+        int namesLength;
+        int[] nameStarts = new int[256];
+        int[] dirIds = new int[256];
+        long[] sizes = keepSizes ? new long[256] : null;
+        long[] lastModified = keepLastModified ? new long[256] : null;
+        int count;
+
+        void add(String path, long size, long lastModifiedMillis) {
+            // У записи архива "имя" — это "архив!/запись": кэш сужает такие результаты по имени архива
+            int archiveEntry = ScanFilter.archiveEntryStart(path);
+            int nameStart = path.lastIndexOf(separator, archiveEntry >= 0 ? archiveEntry : path.length()) + 1;
+            int dirStart = Math.min(rootPrefix.length(), nameStart);
+            int dirLength = Math.max(0, nameStart - 1 - dirStart);
+            if (lastDir == null || lastDir.length() != dirLength || !path.regionMatches(dirStart, lastDir, 0, dirLength)) {
+                lastDir = path.substring(dirStart, dirStart + dirLength);
+                dirs.add(lastDir);
+            }
+            if (count == dirIds.length) {
+                int capacity = count * 2;
+                nameStarts = Arrays.copyOf(nameStarts, capacity);
+                dirIds = Arrays.copyOf(dirIds, capacity);
+                if (sizes != null) {
+                    sizes = Arrays.copyOf(sizes, capacity);
+                }
+                if (lastModified != null) {
+                    lastModified = Arrays.copyOf(lastModified, capacity);
+                }
+            }
+            byte[] name = path.substring(nameStart).getBytes(StandardCharsets.UTF_8);
+            if (namesLength + name.length > names.length) {
+                names = Arrays.copyOf(names, Math.max(names.length * 2, namesLength + name.length));
+            }
+            System.arraycopy(name, 0, names, namesLength, name.length);
+            nameStarts[count] = namesLength;
+            dirIds[count] = dirs.size() - 1;
+            if (sizes != null) {
+                sizes[count] = size;
+            }
+            if (lastModified != null) {
+                lastModified[count] = lastModifiedMillis;
+            }
+            namesLength += name.length;
+            count++;
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package com.azati.file_scanner;
+
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Приёмник для /scan/aggregate: пути не хранятся, только счётчики и гистограммы.
+// Как и в ResultCollector, у каждого потока свои счётчики без синхронизации.
+public class ScanAggregate implements ScanResultSink {
+    private static final long DAY_MILLIS = 24L * 60 * 60 * 1000;
+    private static final long[] SIZE_BOUNDS = {1L << 10, 16L << 10, 256L << 10, 4L << 20, 64L << 20, 1L << 30};
+    private static final String[] SIZE_LABELS = {"<1KB", "1KB-16KB", "16KB-256KB", "256KB-4MB", "4MB-64MB", "64MB-1GB", ">=1GB"};
+    private static final long[] AGE_BOUNDS = {DAY_MILLIS, 7 * DAY_MILLIS, 30 * DAY_MILLIS, 365 * DAY_MILLIS};
+    private static final String[] AGE_LABELS = {"<1d", "1d-7d", "7d-30d", "30d-1y", ">=1y"};
+
+    private final long now = System.currentTimeMillis();
+    private final ConcurrentHashMap<Thread, Stats> stats = new ConcurrentHashMap<>();
+
+    public record Summary(String scanId, boolean interrupted, long files, long totalBytes,
+                          Long minSize, Long maxSize, Instant oldestModified, Instant newestModified,
+                          Map<String, Long> sizeHistogram, Map<String, Long> ageHistogram) {
+    }
+
+    // Для ответа из кэша: считаем по уже найденному результату
+    static ScanAggregate of(ScanResults results) {
+        ScanAggregate aggregate = new ScanAggregate();
+        for (int i = 0; i < results.size(); i++) {
+            aggregate.accept(null, results.fileSize(i), results.lastModified(i));
+        }
+        return aggregate;
+    }
+
+    @Override
+    public void accept(String path, long size, long lastModified) {
+        stats.computeIfAbsent(Thread.currentThread(), thread -> new Stats()).add(size, lastModified);
+    }
+
+    public Summary summary(String scanId, boolean interrupted) {
+        Stats total = new Stats();
+        for (Stats part : stats.values()) {
+            total.merge(part);
+        }
+        boolean empty = total.files == 0;
+        return new Summary(scanId, interrupted, total.files, total.bytes,
+                empty ? null : total.minSize, empty ? null : total.maxSize,
+                empty ? null : Instant.ofEpochMilli(total.oldest), empty ? null : Instant.ofEpochMilli(total.newest),
+                histogram(SIZE_LABELS, total.sizeCounts), histogram(AGE_LABELS, total.ageCounts));
+    }
+
+    private static Map<String, Long> histogram(String[] labels, long[] counts) {
+        Map<String, Long> histogram = new LinkedHashMap<>();
+        for (int i = 0; i < labels.length; i++) {
+            histogram.put(labels[i], counts[i]);
+        }
+        return histogram;
+    }
+
+    private static int bucket(long[] bounds, long value) {
+        int bucket = 0;
+        while (bucket < bounds.length && value >= bounds[bucket]) {
+            bucket++;
+        }
+        return bucket;
+    }
+
+    private final class Stats {
+        long files;
+        long bytes;
+        long minSize = Long.MAX_VALUE;
+        long maxSize = Long.MIN_VALUE;
+        long oldest = Long.MAX_VALUE;
+        long newest = Long.MIN_VALUE;
+        final long[] sizeCounts = new long[SIZE_LABELS.length];
+        final long[] ageCounts = new long[AGE_LABELS.length];
+
+        void add(long size, long lastModified) {
+            files++;
+            bytes += size;
+            minSize = Math.min(minSize, size);
+            maxSize = Math.max(maxSize, size);
+            oldest = Math.min(oldest, lastModified);
+            newest = Math.max(newest, lastModified);
+            sizeCounts[bucket(SIZE_BOUNDS, size)]++;
+            // Файлы "из будущего" попадают в самую свежую корзину
+            ageCounts[bucket(AGE_BOUNDS, Math.max(0, now - lastModified))]++;
+        }
+
+        void merge(Stats other) {
+            files += other.files;
+            bytes += other.bytes;
+            minSize = Math.min(minSize, other.minSize);
+            maxSize = Math.max(maxSize, other.maxSize);
+            oldest = Math.min(oldest, other.oldest);
+            newest = Math.max(newest, other.newest);
+            for (int i = 0; i < sizeCounts.length; i++) {
+                sizeCounts[i] += other.sizeCounts[i];
+            }
+            for (int i = 0; i < ageCounts.length; i++) {
+                ageCounts[i] += other.ageCounts[i];
+            }
+        }
+    }
+}
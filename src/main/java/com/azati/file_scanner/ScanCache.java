@@ -1,59 +1,241 @@
 package com.azati.file_scanner;
 
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import org.springframework.stereotype.Component;
 import org.springframework.beans.factory.annotation.Value;
 
-import java.util.List;
-import java.util.concurrent.ConcurrentHashMap;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 
+// Кэш результатов, ограниченный суммарным числом путей (вес записи = число файлов).
+// Вытеснение по LRU, просроченные записи удаляются фоновой очисткой.
+// Узкий запрос может быть отфильтрован в памяти из закэшированного более широкого.
 @Component
 public class ScanCache {
 
-    private final ConcurrentHashMap<String, CacheEntry> cache = new ConcurrentHashMap<>();
+    // accessOrder = true: итерация идёт от давно неиспользованных к свежим
+    private final LinkedHashMap<String, CacheEntry> cache = new LinkedHashMap<>(16, 0.75f, true);
+    // Те же записи по корню: покрыть запрос может только запись с корнем-предком,
+    // поэтому поиск проверяет несколько корней, а не весь кэш
+    private final HashMap<Path, Map<String, CacheEntry>> entriesByRoot = new HashMap<>();
+    private long totalWeight = 0;
+
     @Value("${file.scanner.cache.ttl}")
     private long cacheTtlMillis;
+    @Value("${file.scanner.cache.max-weight:1000000}")
+    private long maxWeight;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder subsumedHits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder expirations = new LongAdder();
+
+    private ScheduledExecutorService cleaner;
 
     public static class CacheEntry {
-        public final List<String> files;
+        public final ScanQuery query;
+        // Размер и дата файлов есть у результатов обычных сканов; без них по ним не сужаем
+        public final ScanResults files;
         public final long timestamp;
 
-        public CacheEntry(List<String> files, long timestamp) {
+        public CacheEntry(ScanQuery query, ScanResults files, long timestamp) {
+            this.query = query;
             this.files = files;
             this.timestamp = timestamp;
         }
+
+        long weight() {
+            return Math.max(1, files.size());
+        }
+    }
+
+    public record CacheStats(long hits, long subsumedHits, long misses, long evictions, long expirations,
+                             int entries, long weight, long maxWeight) {
+    }
+
+    @PostConstruct
+    public void startCleaner() {
+        cleaner = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "scan-cache-cleaner");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long period = Math.max(1000, cacheTtlMillis);
+        cleaner.scheduleWithFixedDelay(this::purgeExpired, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stopCleaner() {
+        cleaner.shutdownNow();
     }
 
-    public String generateCacheKey(String directoryPath, String fileMask,
-                                   Long minSizeKB, Long maxSizeKB,
-                                   String modifiedAfter, String modifiedBefore,
-                                   String containsText) {
+    public String generateCacheKey(ScanQuery query) {
         StringBuilder keyBuilder = new StringBuilder();
-        keyBuilder.append(directoryPath).append("|");
-        keyBuilder.append(fileMask).append("|");
-        keyBuilder.append(minSizeKB != null ? minSizeKB : "null").append("|");
-        keyBuilder.append(maxSizeKB != null ? maxSizeKB : "null").append("|");
-        keyBuilder.append(modifiedAfter != null ? modifiedAfter : "null").append("|");
-        keyBuilder.append(modifiedBefore != null ? modifiedBefore : "null").append("|");
-        keyBuilder.append(containsText != null ? containsText : "null");
+        keyBuilder.append(query.root).append("|");
+        keyBuilder.append(query.fileMask).append("|");
+        keyBuilder.append(query.minFileSize != null ? query.minFileSize : "null").append("|");
+        keyBuilder.append(query.maxFileSize != null ? query.maxFileSize : "null").append("|");
+        keyBuilder.append(query.modifiedAfterMillis != null ? query.modifiedAfterMillis : "null").append("|");
+        keyBuilder.append(query.modifiedBeforeMillis != null ? query.modifiedBeforeMillis : "null").append("|");
+        keyBuilder.append(query.containsText != null ? query.containsText : "null");
+        if (!query.walk.equals(ScanQuery.WalkOptions.NONE)) {
+            keyBuilder.append("|").append(String.join(",", query.walk.excludes()));
+            keyBuilder.append("|").append(query.walk.minDepth() != null ? query.walk.minDepth() : "null");
+            keyBuilder.append("|").append(query.walk.maxDepth() != null ? query.walk.maxDepth() : "null");
+            keyBuilder.append("|").append(query.walk.followLinks());
+            keyBuilder.append("|").append(query.walk.sameFileSystem());
+        }
         return keyBuilder.toString();
     }
 
-    public CacheEntry getValidCacheEntry(String cacheKey) {
+    public synchronized CacheEntry getValidCacheEntry(String cacheKey) {
         CacheEntry cachedResult = cache.get(cacheKey);
-        if (cachedResult != null && (System.currentTimeMillis() - cachedResult.timestamp) < cacheTtlMillis) {
+        if (cachedResult != null && isValid(cachedResult)) {
+            hits.increment();
             System.out.println("Returning result from cache for key: " + cacheKey);
             return cachedResult;
         }
         return null;
     }
 
+    // Точное совпадение ключа или фильтрация результата более широкого запроса
+    public ScanResults find(ScanQuery query) {
+        String cacheKey = generateCacheKey(query);
+        CacheEntry exact = getValidCacheEntry(cacheKey);
+        if (exact != null) {
+            return exact.files;
+        }
+
+        CacheEntry broader = findCovering(query);
+        if (broader == null) {
+            misses.increment();
+            return null;
+        }
+        subsumedHits.increment();
+        System.out.println("Filtering cached result of " + generateCacheKey(broader.query) + " for key: " + cacheKey);
+        return narrow(broader, query);
+    }
+
+    private synchronized CacheEntry findCovering(ScanQuery query) {
+        CacheEntry best = null;
+        for (Path root = query.root; root != null; root = root.getParent()) {
+            Map<String, CacheEntry> entries = entriesByRoot.get(root);
+            if (entries == null) {
+                continue;
+            }
+            for (CacheEntry entry : entries.values()) {
+                if (isValid(entry) && entry.query.covers(query) && canNarrow(entry, query)
+                        && (best == null || entry.weight() < best.weight())) {
+                    best = entry;
+                }
+            }
+        }
+        if (best != null) {
+            // Обновляем позицию в LRU
+            cache.get(generateCacheKey(best.query));
+        }
+        return best;
+    }
+
+    // Без размеров или дат в записи сужать по ним нельзя: границы должны совпадать
+    private static boolean canNarrow(CacheEntry entry, ScanQuery query) {
+        return (entry.files.hasSizes() || entry.query.sameSizeBounds(query))
+                && (entry.files.hasLastModified() || entry.query.sameDateBounds(query));
+    }
+
+    // Результат делит хранилище с закэшированным, копируется только порядок
+    private ScanResults narrow(CacheEntry broader, ScanQuery query) {
+        ScanFilter filter = new ScanFilter(query, 0, null);
+        boolean sameRoot = broader.query.root.equals(query.root);
+        String rootPrefix = query.root + query.root.getFileSystem().getSeparator();
+        ScanResults files = broader.files;
+        boolean checkSizes = files.hasSizes();
+        boolean checkDates = files.hasLastModified();
+        return files.select(i -> (sameRoot || files.get(i).startsWith(rootPrefix))
+                && filter.acceptsCachedName(files.fileName(i))
+                && (!checkSizes || filter.acceptsSize(files.fileSize(i)))
+                && (!checkDates || filter.acceptsLastModified(files.lastModified(i))));
+    }
 
-    public void put(String cacheKey, List<String> files) {
-        cache.put(cacheKey, new CacheEntry(files, System.currentTimeMillis()));
+    public void put(ScanQuery query, ScanResults files) {
+        String cacheKey = generateCacheKey(query);
+        CacheEntry entry = new CacheEntry(query, files, System.currentTimeMillis());
+        if (entry.weight() > maxWeight) {
+            System.out.println("Result too large to cache for key: " + cacheKey);
+            return;
+        }
+        synchronized (this) {
+            CacheEntry previous = cache.put(cacheKey, entry);
+            if (previous != null) {
+                totalWeight -= previous.weight();
+            }
+            entriesByRoot.computeIfAbsent(query.root, root -> new HashMap<>()).put(cacheKey, entry);
+            totalWeight += entry.weight();
+            evictIfNeeded();
+        }
         System.out.println("Saved result to cache for key: " + cacheKey);
     }
-    public void clear() {
+
+    private void evictIfNeeded() {
+        Iterator<Map.Entry<String, CacheEntry>> iterator = cache.entrySet().iterator();
+        while (totalWeight > maxWeight && iterator.hasNext()) {
+            Map.Entry<String, CacheEntry> eldest = iterator.next();
+            iterator.remove();
+            unindex(eldest.getKey(), eldest.getValue());
+            totalWeight -= eldest.getValue().weight();
+            evictions.increment();
+        }
+    }
+
+    synchronized void purgeExpired() {
+        Iterator<Map.Entry<String, CacheEntry>> iterator = cache.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, CacheEntry> next = iterator.next();
+            CacheEntry entry = next.getValue();
+            if (!isValid(entry)) {
+                iterator.remove();
+                unindex(next.getKey(), entry);
+                totalWeight -= entry.weight();
+                expirations.increment();
+            }
+        }
+    }
+
+    private void unindex(String cacheKey, CacheEntry entry) {
+        Map<String, CacheEntry> entries = entriesByRoot.get(entry.query.root);
+        if (entries != null && entries.remove(cacheKey, entry) && entries.isEmpty()) {
+            entriesByRoot.remove(entry.query.root);
+        }
+    }
+
+    private boolean isValid(CacheEntry entry) {
+        return (System.currentTimeMillis() - entry.timestamp) < cacheTtlMillis;
+    }
+
+    public synchronized CacheStats stats() {
+        return new CacheStats(hits.sum(), subsumedHits.sum(), misses.sum(), evictions.sum(), expirations.sum(),
+                cache.size(), totalWeight, maxWeight);
+    }
+
+    public double hitRatio() {
+        long hitCount = hits.sum() + subsumedHits.sum();
+        long total = hitCount + misses.sum();
+        return total == 0 ? 0 : (double) hitCount / total;
+    }
+
+    public synchronized void clear() {
         cache.clear();
+        entriesByRoot.clear();
+        totalWeight = 0;
         System.out.println("Cache cleared.");
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,227 @@
+package com.azati.file_scanner;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.Locale;
+import java.util.Enumeration;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+// Фильтры запроса, собранные один раз на сессию. Порядок проверок — от дешёвых
+// к дорогим: размер и дата (сравнение чисел), маска имени, расширение, содержимое.
+// Содержимое .gz ищется в распакованном потоке, а zip/jar — в каждой записи;
+// записи архива попадают в результат как "архив!/запись".
+public class ScanFilter {
+    static final String ARCHIVE_ENTRY_SEPARATOR = "!/";
+    // Текст наверняка: читаются без проверки на двоичность
+    static final Set<String> TEXT_EXTENSIONS = Set.of("txt", "log", "csv", "json", "xml", "html", "java", "py", "md");
+    // Двоичные наверняка: отсекаются без чтения. Остальные проверяются по первому блоку
+    static final Set<String> BINARY_EXTENSIONS = Set.of("png", "jpg", "jpeg", "gif", "bmp", "ico", "webp",
+            "mp3", "mp4", "avi", "mkv", "mov", "pdf", "exe", "dll", "so", "dylib", "class", "o", "a",
+            "bin", "iso", "7z", "rar", "xz", "bz2", "zst", "woff", "woff2", "ttf", "otf", "pyc");
+    static final Set<String> ZIP_EXTENSIONS = Set.of("zip", "jar");
+
+    private final GlobMatcher mask;
+    private final long minFileSize;
+    private final long maxFileSize;
+    private final long modifiedAfterMillis;
+    private final long modifiedBeforeMillis;
+    private final ContentMatcher contentMatcher;
+    private final String containsText;
+
+    // null для фильтра, которым кэш сужает уже найденные результаты
+    private final ScanMetrics metrics;
+    // 0 — не логировать отклонённые файлы, N — логировать каждый N-й
+    private final int rejectionLogSampleRate;
+    private final AtomicLong rejections = new AtomicLong();
+
+    public ScanFilter(ScanQuery query, int rejectionLogSampleRate, ScanMetrics metrics) {
+        this.mask = new GlobMatcher(query.fileMask);
+        this.minFileSize = query.minFileSize != null ? query.minFileSize : Long.MIN_VALUE;
+        this.maxFileSize = query.maxFileSize != null ? query.maxFileSize : Long.MAX_VALUE;
+        this.modifiedAfterMillis = query.modifiedAfterMillis != null ? query.modifiedAfterMillis : Long.MIN_VALUE;
+        this.modifiedBeforeMillis = query.modifiedBeforeMillis != null ? query.modifiedBeforeMillis : Long.MAX_VALUE;
+        this.containsText = query.containsText;
+        this.contentMatcher = containsText != null ? new ContentMatcher(containsText) : null;
+        this.rejectionLogSampleRate = rejectionLogSampleRate;
+        this.metrics = metrics;
+    }
+
+    // Первый этап: всё, что можно проверить без чтения файла
+    public boolean acceptsMetadata(Path file, long fileSize, long lastModifiedMillis) {
+        if (fileSize < minFileSize || fileSize > maxFileSize) {
+            metrics.rejected(ScanMetrics.Rejection.SIZE);
+            if (sampled()) {
+                log(file, "size " + fileSize + " bytes is out of range");
+            }
+            return false;
+        }
+        if (lastModifiedMillis < modifiedAfterMillis || lastModifiedMillis > modifiedBeforeMillis) {
+            metrics.rejected(ScanMetrics.Rejection.MODIFIED);
+            if (sampled()) {
+                log(file, "modified at " + Instant.ofEpochMilli(lastModifiedMillis) + " is out of range");
+            }
+            return false;
+        }
+
+        String fileName = file.getFileName().toString();
+        if (!matchesMask(fileName)) {
+            metrics.rejected(ScanMetrics.Rejection.MASK);
+            if (sampled()) {
+                log(file, "does not match the mask '" + mask + "'");
+            }
+            return false;
+        }
+
+        if (contentMatcher != null && BINARY_EXTENSIONS.contains(extension(fileName))) {
+            metrics.rejected(ScanMetrics.Rejection.EXTENSION);
+            return false;
+        }
+        return true;
+    }
+
+    // При поиске по содержимому app.log.gz подходит под маску *.log: ротированные логи
+    // ищутся вместе с текущими. Без containsText маска работает как обычно.
+    private boolean matchesMask(String fileName) {
+        return mask.matches(fileName)
+                || (contentMatcher != null && isGzip(fileName) && mask.matches(stripGzip(fileName)));
+    }
+
+    public boolean needsContent() {
+        return contentMatcher != null;
+    }
+
+    // Второй этап: чтение содержимого, только для файлов, прошедших acceptsMetadata.
+    // Совпадения сразу отдаются в сессию: в одном архиве их может быть несколько.
+    public void checkContent(Path file, long fileSize, long lastModifiedMillis, ScanSession session) {
+        String fileName = file.getFileName().toString();
+        try {
+            if (isZip(fileName)) {
+                searchZip(file, fileSize, lastModifiedMillis, session);
+            } else if (isGzip(fileName)) {
+                ContentMatcher.Result result;
+                try (InputStream in = new GZIPInputStream(Files.newInputStream(file), ContentMatcher.CHUNK_SIZE)) {
+                    result = contentMatcher.search(in, session, !isTextFile(stripGzip(fileName)));
+                }
+                report(file.toString(), result, fileSize, lastModifiedMillis, session);
+            } else {
+                ContentMatcher.Result result = contentMatcher.search(file, session, !isTextFile(fileName));
+                report(file.toString(), result, fileSize, lastModifiedMillis, session);
+            }
+        } catch (IOException e) {
+            System.err.println("Error reading content of file " + file.toAbsolutePath() + ": " + e.getMessage());
+        }
+    }
+
+    // Записи ищутся по очереди; размер и дата в результате — самого архива,
+    // по ним же архив прошёл фильтры
+    private void searchZip(Path file, long fileSize, long lastModifiedMillis, ScanSession session) throws IOException {
+        try (ZipFile zip = new ZipFile(file.toFile())) {
+            Enumeration<? extends ZipEntry> entries = zip.entries();
+            while (entries.hasMoreElements() && !session.stopped) {
+                ZipEntry entry = entries.nextElement();
+                String entryName = entry.getName();
+                String entryFileName = entryName.substring(entryName.lastIndexOf('/') + 1);
+                if (entry.isDirectory()) {
+                    continue;
+                }
+                if (BINARY_EXTENSIONS.contains(extension(entryFileName))) {
+                    metrics.rejected(ScanMetrics.Rejection.EXTENSION);
+                    continue;
+                }
+                ContentMatcher.Result result;
+                try (InputStream in = zip.getInputStream(entry)) {
+                    result = contentMatcher.search(in, session, !isTextFile(entryFileName));
+                }
+                report(file + ARCHIVE_ENTRY_SEPARATOR + entryName, result, fileSize, lastModifiedMillis, session);
+            }
+        }
+    }
+
+    private void report(String path, ContentMatcher.Result result, long fileSize, long lastModifiedMillis, ScanSession session) {
+        switch (result) {
+            case FOUND -> session.addResult(path, fileSize, lastModifiedMillis);
+            case BINARY -> metrics.rejected(ScanMetrics.Rejection.BINARY);
+            case NOT_FOUND -> {
+                metrics.rejected(ScanMetrics.Rejection.CONTENT);
+                if (sampled()) {
+                    System.out.println("File '" + path + "' ignored: does not contain text '" + containsText + "'");
+                }
+            }
+        }
+    }
+
+    // Проверка уже найденного файла из кэша: содержимое проверено при сканировании.
+    // У записи архива маска проверяется по имени архива, как при сканировании.
+    public boolean acceptsCachedResult(String fileName, long fileSize, long lastModifiedMillis) {
+        return acceptsSize(fileSize) && acceptsLastModified(lastModifiedMillis) && acceptsCachedName(fileName);
+    }
+
+    public boolean acceptsCachedName(String fileName) {
+        int archiveEntry = fileName.indexOf(ARCHIVE_ENTRY_SEPARATOR);
+        if (archiveEntry >= 0) {
+            fileName = fileName.substring(0, archiveEntry);
+        }
+        return matchesMask(fileName);
+    }
+
+    public boolean acceptsSize(long fileSize) {
+        return fileSize >= minFileSize && fileSize <= maxFileSize;
+    }
+
+    public boolean acceptsLastModified(long lastModifiedMillis) {
+        return lastModifiedMillis >= modifiedAfterMillis && lastModifiedMillis <= modifiedBeforeMillis;
+    }
+
+    static boolean isTextFile(String fileName) {
+        return TEXT_EXTENSIONS.contains(extension(fileName));
+    }
+
+    // Архивы, содержимое которых ищется после распаковки
+    static boolean isArchive(String fileName) {
+        return isGzip(fileName) || isZip(fileName);
+    }
+
+    private static boolean isGzip(String fileName) {
+        return "gz".equals(extension(fileName));
+    }
+
+    private static boolean isZip(String fileName) {
+        return ZIP_EXTENSIONS.contains(extension(fileName));
+    }
+
+    private static String stripGzip(String fileName) {
+        return fileName.substring(0, fileName.length() - ".gz".length());
+    }
+
+    // Начало пути записи архива ("dir/a.zip!/entry") или -1
+    static int archiveEntryStart(String path) {
+        int separator = path.indexOf(ARCHIVE_ENTRY_SEPARATOR);
+        while (separator >= 0) {
+            if (isZip(path.substring(0, separator))) {
+                return separator;
+            }
+            separator = path.indexOf(ARCHIVE_ENTRY_SEPARATOR, separator + 1);
+        }
+        return -1;
+    }
+
+    private static String extension(String fileName) {
+        int dot = fileName.lastIndexOf('.');
+        return dot >= 0 ? fileName.substring(dot + 1).toLowerCase(Locale.ROOT) : "";
+    }
+
+    private boolean sampled() {
+        return rejectionLogSampleRate > 0 && rejections.incrementAndGet() % rejectionLogSampleRate == 0;
+    }
+
+    private static void log(Path file, String reason) {
+        System.out.println("File '" + file.getFileName() + "' ignored: " + reason);
+    }
+}
@@ -0,0 +1,299 @@
+package com.azati.file_scanner;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Фоновые задания сканирования: POST /scan/jobs сразу возвращает id, а поток запроса
+// освобождается. Задания ждут в очереди с приоритетом и выполняются обычным scan()
+// на своих потоках, поэтому кэш, лимит одновременных сканов и метрики работают как для /scan.
+// Готовый результат отдаётся страницами и хранится ttl-ms после завершения.
+@Service
+public class ScanJobService {
+    public enum State { QUEUED, RUNNING, COMPLETED, CANCELLED, FAILED }
+
+    private final FileScanService fileScanService;
+    private final ConcurrentHashMap<String, ScanJob> jobs = new ConcurrentHashMap<>();
+    // Сколько директорий было в полном обходе корня с теми же правилами — основа для ETA
+    private final ConcurrentHashMap<HistoryKey, Long> directoriesByRoot = new ConcurrentHashMap<>();
+    private final AtomicLong sequence = new AtomicLong();
+    private final ThreadPoolExecutor runners;
+    private final int maxQueued;
+    private ScheduledExecutorService cleaner;
+
+    @Value("${file.scanner.jobs.ttl-ms:3600000}")
+    private long ttlMillis;
+    @Value("${file.scanner.jobs.max-page-size:10000}")
+    private int maxPageSize;
+
+    // Параметры /scan, сохранённые до запуска задания
+    public record JobRequest(String path, String mask, String threads,
+                             Long minSizeKB, Long maxSizeKB,
+                             String modifiedAfter, String modifiedBefore,
+                             String containsText, ScanQuery.WalkOptions walk,
+                             Integer limit, Integer topK, String sortBy) {
+    }
+
+    public record JobStatus(String id, State state, int priority,
+                            Instant submittedAt, Instant startedAt, Instant finishedAt, long elapsedMs,
+                            Long directoriesVisited, Long filesVisited, Long matches, Long bytesRead,
+                            Double progress, Long etaMs, Integer resultCount, String error) {
+    }
+
+    public record ResultPage(String jobId, State state, int total, List<String> items, String nextCursor) {
+    }
+
+    private record HistoryKey(Path root, ScanQuery.WalkOptions walk) {
+    }
+
+    public ScanJobService(FileScanService fileScanService, ScanMetrics metrics,
+                          @Value("${file.scanner.jobs.runners:4}") int runnerCount,
+                          @Value("${file.scanner.jobs.max-queued:1000}") int maxQueued) {
+        this.fileScanService = fileScanService;
+        this.maxQueued = Math.max(1, maxQueued);
+        AtomicInteger threadNumber = new AtomicInteger();
+        int threads = Math.max(1, runnerCount);
+        // execute(), а не submit(): в очередь попадает само задание и сравнивается по приоритету
+        this.runners = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new PriorityBlockingQueue<>(), r -> {
+            Thread thread = new Thread(r, "scan-job-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        metrics.gauge("scanner.jobs.queued", "Scan jobs waiting to start", () -> runners.getQueue().size());
+        metrics.gauge("scanner.jobs.running", "Scan jobs currently running", runners::getActiveCount);
+    }
+
+    @PostConstruct
+    public void startCleaner() {
+        cleaner = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "scan-job-cleaner");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long period = Math.max(1000, Math.min(ttlMillis, 60_000));
+        cleaner.scheduleWithFixedDelay(this::purgeExpired, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (cleaner != null) {
+            cleaner.shutdownNow();
+        }
+        for (ScanJob job : jobs.values()) {
+            cancel(job.id);
+        }
+        runners.shutdownNow();
+    }
+
+    // Параметры проверяются сразу, чтобы ошибка пришла ответом на POST, а не упавшим заданием
+    public JobStatus submit(JobRequest request, int priority) {
+        ScanQuery.of(request.path(), request.mask(), request.minSizeKB(), request.maxSizeKB(),
+                request.modifiedAfter(), request.modifiedBefore(), request.containsText(), request.walk());
+        FileScanService.checkResultOptions(request.limit(), request.topK(), request.sortBy());
+        if (runners.getQueue().size() >= maxQueued) {
+            throw new IllegalStateException("Job queue is full (" + maxQueued + " jobs waiting).");
+        }
+        ScanJob job = new ScanJob(UUID.randomUUID().toString(), request, priority, sequence.incrementAndGet());
+        jobs.put(job.id, job);
+        runners.execute(job);
+        System.out.println("Scan job " + job.id + " queued with priority " + priority + " for " + request.path());
+        return job.status();
+    }
+
+    // null — задания нет или оно уже удалено по TTL
+    public JobStatus status(String id) {
+        ScanJob job = jobs.get(id);
+        return job != null ? job.status() : null;
+    }
+
+    public List<JobStatus> list() {
+        List<JobStatus> statuses = new ArrayList<>();
+        for (ScanJob job : jobs.values()) {
+            statuses.add(job.status());
+        }
+        statuses.sort(Comparator.comparing(JobStatus::submittedAt));
+        return statuses;
+    }
+
+    // Курсор — позиция в неизменяемом результате задания, поэтому страницы не съезжают
+    public ResultPage results(String id, String cursor, int size) {
+        ScanJob job = jobs.get(id);
+        if (job == null) {
+            return null;
+        }
+        ScanResults results = job.results;
+        if (results == null) {
+            throw new IllegalStateException("Job " + id + " has no results yet (" + job.state + ").");
+        }
+        int from;
+        try {
+            from = cursor == null || cursor.isEmpty() ? 0 : Integer.parseInt(cursor);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid cursor: " + cursor);
+        }
+        if (from < 0 || from > results.size()) {
+            throw new IllegalArgumentException("Invalid cursor: " + cursor);
+        }
+        int to = Math.min(results.size(), from + Math.max(1, Math.min(size, maxPageSize)));
+        return new ResultPage(id, job.state, results.size(), results.subList(from, to),
+                to < results.size() ? String.valueOf(to) : null);
+    }
+
+    // Ожидающее задание снимается с очереди, идущее прерывается (частичный результат сохраняется)
+    public JobStatus cancel(String id) {
+        ScanJob job = jobs.get(id);
+        if (job == null) {
+            return null;
+        }
+        synchronized (job) {
+            if (job.state == State.QUEUED) {
+                runners.remove(job);
+                job.finish(State.CANCELLED);
+            } else if (job.state == State.RUNNING) {
+                job.cancelRequested = true;
+                ScanSession session = job.session;
+                if (session != null) {
+                    session.interrupt();
+                }
+            }
+        }
+        System.out.println("Scan job " + id + " cancellation requested.");
+        return job.status();
+    }
+
+    private void purgeExpired() {
+        long now = System.currentTimeMillis();
+        jobs.values().removeIf(job -> job.finishedAt > 0 && now - job.finishedAt > ttlMillis);
+    }
+
+    private final class ScanJob implements Runnable, Comparable<ScanJob> {
+        final String id;
+        final JobRequest request;
+        final int priority;
+        final long sequence;
+        final long submittedAt = System.currentTimeMillis();
+        volatile State state = State.QUEUED;
+        volatile boolean cancelRequested;
+        volatile ScanSession session;
+        volatile long startedAt;
+        volatile long finishedAt;
+        volatile ScanResults results;
+        volatile String error;
+
+        ScanJob(String id, JobRequest request, int priority, long sequence) {
+            this.id = id;
+            this.request = request;
+            this.priority = priority;
+            this.sequence = sequence;
+        }
+
+        // Выше приоритет — раньше; при равном — в порядке постановки
+        @Override
+        public int compareTo(ScanJob other) {
+            int byPriority = Integer.compare(other.priority, priority);
+            return byPriority != 0 ? byPriority : Long.compare(sequence, other.sequence);
+        }
+
+        @Override
+        public void run() {
+            synchronized (this) {
+                if (state != State.QUEUED) {
+                    return;
+                }
+                state = State.RUNNING;
+                startedAt = System.currentTimeMillis();
+            }
+            try {
+                ScanResults found = fileScanService.scan(id, request.path(), request.mask(), request.threads(),
+                        request.minSizeKB(), request.maxSizeKB(),
+                        request.modifiedAfter(), request.modifiedBefore(),
+                        request.containsText(), request.walk(),
+                        request.limit(), request.topK(), request.sortBy(),
+                        started -> {
+                            session = started;
+                            // Отмена могла прийти до создания сессии
+                            if (cancelRequested) {
+                                started.interrupt();
+                            }
+                        });
+                results = found;
+                ScanSession finished = session;
+                boolean interrupted = finished != null && finished.interrupted;
+                if (finished != null && !interrupted && !finished.limitReached() && request.topK() == null) {
+                    directoriesByRoot.put(new HistoryKey(finished.startPath, finished.query.walk), finished.directoriesVisited.sum());
+                }
+                finish(interrupted || cancelRequested ? State.CANCELLED : State.COMPLETED);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                finish(State.CANCELLED);
+            } catch (IOException | RuntimeException e) {
+                System.err.println("Scan job " + id + " failed: " + e.getMessage());
+                error = e.getMessage();
+                finish(State.FAILED);
+            }
+        }
+
+        void finish(State finalState) {
+            finishedAt = System.currentTimeMillis();
+            state = finalState;
+            System.out.println("Scan job " + id + " " + finalState.name().toLowerCase()
+                    + (results != null ? " with " + results.size() + " result(s)." : "."));
+        }
+
+        JobStatus status() {
+            long now = System.currentTimeMillis();
+            long end = finishedAt > 0 ? finishedAt : now;
+            long elapsed = startedAt > 0 ? end - startedAt : 0;
+            ScanSession current = session;
+            Long directories = null;
+            Long files = null;
+            Long matches = null;
+            Long bytes = null;
+            Double progress = null;
+            Long eta = null;
+            if (current != null) {
+                directories = current.directoriesVisited.sum();
+                files = current.filesVisited.sum();
+                matches = current.matchCount.sum();
+                bytes = current.bytesRead.sum();
+                Long expected = directoriesByRoot.get(new HistoryKey(current.startPath, current.query.walk));
+                if (state == State.RUNNING && expected != null && expected > 0 && directories > 0) {
+                    // Директорий в прошлый раз и темп обхода сейчас; файлы после обхода в оценку не входят
+                    progress = Math.min(1.0, (double) directories / expected);
+                    long running = Math.max(1, now - current.startedAt);
+                    eta = Math.max(0, expected - directories) * running / directories;
+                }
+            }
+            if (state == State.COMPLETED) {
+                progress = 1.0;
+                eta = 0L;
+            }
+            ScanResults found = results;
+            return new JobStatus(id, state, priority,
+                    Instant.ofEpochMilli(submittedAt),
+                    startedAt > 0 ? Instant.ofEpochMilli(startedAt) : null,
+                    finishedAt > 0 ? Instant.ofEpochMilli(finishedAt) : null,
+                    elapsed, directories, files, matches != null ? matches : found != null ? Long.valueOf(found.size()) : null,
+                    bytes, progress, eta, found != null ? found.size() : null, error);
+        }
+    }
+}
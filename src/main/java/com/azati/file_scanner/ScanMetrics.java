@@ -0,0 +1,99 @@
+package com.azati.file_scanner;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+// Метрики сканирования для Actuator (/actuator/metrics, /actuator/prometheus).
+// Счётчики держим в полях, чтобы на горячем пути не было поиска метра по имени.
+@Component
+public class ScanMetrics {
+    public enum Rejection { EXCLUDED, SIZE, MODIFIED, MASK, EXTENSION, CONTENT_INDEX, BINARY, CONTENT }
+
+    private final MeterRegistry registry;
+    private final Counter directoriesVisited;
+    private final Counter directoriesPruned;
+    private final Counter filesVisited;
+    private final Counter filesMatched;
+    private final Counter contentBytesRead;
+    private final Counter[] rejections = new Counter[Rejection.values().length];
+    private final Timer traversalTaskDuration;
+
+    public ScanMetrics(MeterRegistry registry) {
+        this.registry = registry;
+        this.directoriesVisited = Counter.builder("scanner.directories.visited")
+                .description("Directories listed by scan workers").register(registry);
+        this.directoriesPruned = Counter.builder("scanner.directories.pruned")
+                .description("Subtrees skipped by exclude patterns, depth or file system limits").register(registry);
+        this.filesVisited = Counter.builder("scanner.files.visited")
+                .description("Files checked against scan filters").register(registry);
+        this.filesMatched = Counter.builder("scanner.files.matched")
+                .description("Files that passed all filters").register(registry);
+        this.contentBytesRead = Counter.builder("scanner.content.bytes.read").baseUnit("bytes")
+                .description("Bytes read by containsText search").register(registry);
+        for (Rejection rejection : Rejection.values()) {
+            rejections[rejection.ordinal()] = Counter.builder("scanner.files.rejected")
+                    .tag("filter", rejection.name().toLowerCase())
+                    .description("Files rejected, by the filter that rejected them").register(registry);
+        }
+        this.traversalTaskDuration = Timer.builder("scanner.traversal.task.duration")
+                .description("Time a worker spends on one forked traversal task; max shows stragglers")
+                .register(registry);
+    }
+
+    public void directoryVisited() {
+        directoriesVisited.increment();
+    }
+
+    public void directoryPruned() {
+        directoriesPruned.increment();
+    }
+
+    public void filesVisited(int count) {
+        filesVisited.increment(count);
+    }
+
+    public void fileMatched() {
+        filesMatched.increment();
+    }
+
+    public void contentBytesRead(long bytes) {
+        contentBytesRead.increment(bytes);
+    }
+
+    public void rejected(Rejection rejection) {
+        rejections[rejection.ordinal()].increment();
+    }
+
+    public void traversalTask(long nanos) {
+        traversalTaskDuration.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public Timer.Sample startScan() {
+        return Timer.start(registry);
+    }
+
+    public void scanFinished(Timer.Sample sample, String source, boolean interrupted) {
+        sample.stop(Timer.builder("scanner.scan.duration")
+                .description("Scan latency")
+                .tags("source", source, "interrupted", String.valueOf(interrupted))
+                .publishPercentileHistogram()
+                .register(registry));
+    }
+
+    public void monitorExecutor(ExecutorService executor, String name) {
+        new ExecutorServiceMetrics(executor, name, Tags.empty()).bindTo(registry);
+    }
+
+    public void gauge(String name, String description, Supplier<Number> value) {
+        Gauge.builder(name, value).description(description).register(registry);
+    }
+}
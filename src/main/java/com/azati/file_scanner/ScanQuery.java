@@ -0,0 +1,135 @@
+package com.azati.file_scanner;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Objects;
+
+// Разобранные и нормализованные параметры запроса. Используется как ключ кэша
+// и для проверки, покрывает ли закэшированный запрос более узкий.
+public class ScanQuery {
+    private static final long KB_TO_BYTES = 1024L;
+
+    final Path root;
+    final String fileMask;
+    final Long minFileSize;
+    final Long maxFileSize;
+    final Long modifiedAfterMillis;
+    final Long modifiedBeforeMillis;
+    final String containsText;
+    final WalkOptions walk;
+
+    // Что обходить: исключения в стиле .gitignore, глубина (файл в корне — глубина 1),
+    // переход по символическим ссылкам и запрет выхода за файловую систему корня
+    public record WalkOptions(List<String> excludes, Integer minDepth, Integer maxDepth,
+                              boolean followLinks, boolean sameFileSystem) {
+        public static final WalkOptions NONE = new WalkOptions(List.of(), null, null, false, false);
+
+        public static WalkOptions of(List<String> excludes, Integer minDepth, Integer maxDepth,
+                                     boolean followLinks, boolean sameFileSystem) {
+            if (minDepth != null && minDepth < 1 || maxDepth != null && maxDepth < 1) {
+                throw new IllegalArgumentException("minDepth and maxDepth must be at least 1.");
+            }
+            if (minDepth != null && maxDepth != null && minDepth > maxDepth) {
+                throw new IllegalArgumentException("minDepth cannot be greater than maxDepth.");
+            }
+            // Пустые и повторные шаблоны не влияют на результат и не должны менять ключ кэша
+            LinkedHashSet<String> patterns = new LinkedHashSet<>();
+            if (excludes != null) {
+                for (String exclude : excludes) {
+                    if (exclude != null && !exclude.isBlank()) {
+                        patterns.add(exclude.trim());
+                    }
+                }
+            }
+            WalkOptions options = new WalkOptions(List.copyOf(patterns),
+                    minDepth != null && minDepth == 1 ? null : minDepth, maxDepth, followLinks, sameFileSystem);
+            return options.equals(NONE) ? NONE : options;
+        }
+    }
+
+    public ScanQuery(Path root, String fileMask,
+                     Long minFileSize, Long maxFileSize,
+                     Long modifiedAfterMillis, Long modifiedBeforeMillis,
+                     String containsText) {
+        this(root, fileMask, minFileSize, maxFileSize, modifiedAfterMillis, modifiedBeforeMillis, containsText, WalkOptions.NONE);
+    }
+
+    public ScanQuery(Path root, String fileMask,
+                     Long minFileSize, Long maxFileSize,
+                     Long modifiedAfterMillis, Long modifiedBeforeMillis,
+                     String containsText, WalkOptions walk) {
+        this.root = root;
+        this.fileMask = fileMask;
+        this.minFileSize = minFileSize;
+        this.maxFileSize = maxFileSize;
+        this.modifiedAfterMillis = modifiedAfterMillis;
+        this.modifiedBeforeMillis = modifiedBeforeMillis;
+        this.containsText = (containsText != null && !containsText.isEmpty()) ? containsText : null;
+        this.walk = walk != null ? walk : WalkOptions.NONE;
+    }
+
+    public static ScanQuery of(String directoryPath, String fileMask,
+                               Long minSizeKB, Long maxSizeKB,
+                               String modifiedAfter, String modifiedBefore,
+                               String containsText) {
+        return of(directoryPath, fileMask, minSizeKB, maxSizeKB, modifiedAfter, modifiedBefore, containsText, WalkOptions.NONE);
+    }
+
+    public static ScanQuery of(String directoryPath, String fileMask,
+                               Long minSizeKB, Long maxSizeKB,
+                               String modifiedAfter, String modifiedBefore,
+                               String containsText, WalkOptions walk) {
+        try {
+            return new ScanQuery(
+                    Paths.get(directoryPath).toAbsolutePath().normalize(), fileMask,
+                    minSizeKB != null ? minSizeKB * KB_TO_BYTES : null,
+                    maxSizeKB != null ? maxSizeKB * KB_TO_BYTES : null,
+                    parseDate(modifiedAfter), parseDate(modifiedBefore),
+                    containsText, walk);
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Invalid date format. Please use YYYY-MM-DD for modifiedAfter and modifiedBefore.", e);
+        }
+    }
+
+    private static Long parseDate(String value) {
+        if (value == null || value.isEmpty()) {
+            return null;
+        }
+        return LocalDate.parse(value).atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    boolean hasSizeBounds() {
+        return minFileSize != null || maxFileSize != null;
+    }
+
+    boolean hasDateBounds() {
+        return modifiedAfterMillis != null || modifiedBeforeMillis != null;
+    }
+
+    boolean sameSizeBounds(ScanQuery other) {
+        return Objects.equals(minFileSize, other.minFileSize) && Objects.equals(maxFileSize, other.maxFileSize);
+    }
+
+    boolean sameDateBounds(ScanQuery other) {
+        return Objects.equals(modifiedAfterMillis, other.modifiedAfterMillis)
+                && Objects.equals(modifiedBeforeMillis, other.modifiedBeforeMillis);
+    }
+
+    // true, если любой файл, подходящий под narrower, подходит и под этот запрос.
+    // Глубина и шаблоны с "/" считаются от корня, поэтому с ними покрывается только тот же корень.
+    public boolean covers(ScanQuery narrower) {
+        return narrower.root.startsWith(root)
+                && walk.equals(narrower.walk) && (walk.equals(WalkOptions.NONE) || root.equals(narrower.root))
+                && Objects.equals(containsText, narrower.containsText)
+                && ("*".equals(fileMask) || fileMask.equalsIgnoreCase(narrower.fileMask))
+                && (minFileSize == null || (narrower.minFileSize != null && narrower.minFileSize >= minFileSize))
+                && (maxFileSize == null || (narrower.maxFileSize != null && narrower.maxFileSize <= maxFileSize))
+                && (modifiedAfterMillis == null || (narrower.modifiedAfterMillis != null && narrower.modifiedAfterMillis >= modifiedAfterMillis))
+                && (modifiedBeforeMillis == null || (narrower.modifiedBeforeMillis != null && narrower.modifiedBeforeMillis <= modifiedBeforeMillis));
+    }
+}
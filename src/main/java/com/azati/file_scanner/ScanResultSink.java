@@ -0,0 +1,6 @@
+package com.azati.file_scanner;
+
+// Куда сессия отдаёт найденные файлы: в список для обычного ответа или в поток клиенту
+public interface ScanResultSink {
+    void accept(String path, long size, long lastModified);
+}
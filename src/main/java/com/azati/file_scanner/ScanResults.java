@@ -0,0 +1,423 @@
+package com.azati.file_scanner;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.PriorityQueue;
+import java.util.RandomAccess;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.IntPredicate;
+
+// Компактный неизменяемый результат сканирования. Пути хранятся в UTF-8 относительно корня:
+// каталог — один раз в общей таблице, у файла — только имя в общем массиве байтов.
+// После сортировки записи переписываются в порядке пути: номер каталога хранится не
+// у каждой записи, а один раз на серию записей из него. Размер и дата хранятся, только
+// если их потребует кэш (сужение по размеру или дате) или topK; остальным хватает путей.
+// Строки путей создаются лишь по запросу; в JSON результат пишется прямо из байтов.
+// Порядок задаётся отдельным массивом номеров, поэтому отфильтрованный результат
+// (например, для узкого запроса из кэша) делит хранилище с исходным.
+@JsonSerialize(using = ScanResults.Serializer.class)
+public class ScanResults extends AbstractList<String> implements RandomAccess {
+    private static final int INSERTION_SORT_THRESHOLD = 32;
+    private static final int PARALLEL_SORT_THRESHOLD = 8192;
+
+    // Ключ для topK: самые большие или самые новые файлы
+    public enum Order { SIZE, MODIFIED }
+
+    static final ScanResults EMPTY = new ScanResults("", '/', new byte[0][], new byte[0], new int[1],
+            new int[0], new long[0], new long[0], null);
+
+    private final String rootPrefix;
+    private final byte[] rootPrefixBytes;
+    private final byte separator;
+    private final byte[][] dirs;
+    private final byte[] names;
+    // Имя записи e занимает names[nameStarts[e], nameStarts[e + 1])
+    private final int[] nameStarts;
+    // Каталог записи: либо у каждой записи (до сортировки), либо по сериям —
+    // записи с dirRunStarts[r] до dirRunStarts[r + 1] лежат в каталоге dirRunIds[r]
+    private final int[] dirIds;
+    private final int[] dirRunStarts;
+    private final int[] dirRunIds;
+    // null — не собирались
+    private final long[] sizes;
+    private final long[] lastModified;
+    // Позиция в результате -> номер записи; null — номера совпадают с позициями
+    private final int[] order;
+
+    ScanResults(String rootPrefix, char separator, byte[][] dirs, byte[] names, int[] nameStarts,
+                int[] dirIds, long[] sizes, long[] lastModified, int[] order) {
+        this(rootPrefix, (byte) separator, dirs, names, nameStarts, dirIds, null, null, sizes, lastModified, order);
+    }
+
+    private ScanResults(String rootPrefix, byte separator, byte[][] dirs, byte[] names, int[] nameStarts,
+                        int[] dirIds, int[] dirRunStarts, int[] dirRunIds,
+                        long[] sizes, long[] lastModified, int[] order) {
+        this.rootPrefix = rootPrefix;
+        this.rootPrefixBytes = rootPrefix.getBytes(StandardCharsets.UTF_8);
+        this.separator = separator;
+        this.dirs = dirs;
+        this.names = names;
+        this.nameStarts = nameStarts;
+        this.dirIds = dirIds;
+        this.dirRunStarts = dirRunStarts;
+        this.dirRunIds = dirRunIds;
+        this.sizes = sizes;
+        this.lastModified = lastModified;
+        this.order = order;
+    }
+
+    private ScanResults(ScanResults storage, int[] order) {
+        this(storage.rootPrefix, storage.separator, storage.dirs, storage.names, storage.nameStarts,
+                storage.dirIds, storage.dirRunStarts, storage.dirRunIds, storage.sizes, storage.lastModified, order);
+    }
+
+    @Override
+    public int size() {
+        return order != null ? order.length : nameStarts.length - 1;
+    }
+
+    private int entry(int index) {
+        return order != null ? order[index] : index;
+    }
+
+    private int dirId(int entry) {
+        if (dirIds != null) {
+            return dirIds[entry];
+        }
+        int run = Arrays.binarySearch(dirRunStarts, entry);
+        return dirRunIds[run >= 0 ? run : -run - 2];
+    }
+
+    // Абсолютный путь
+    @Override
+    public String get(int index) {
+        int entry = entry(index);
+        byte[] dir = dirs[dirId(entry)];
+        StringBuilder path = new StringBuilder(rootPrefix.length() + dir.length + 1 + nameLength(entry));
+        path.append(rootPrefix);
+        if (dir.length > 0) {
+            path.append(new String(dir, StandardCharsets.UTF_8)).append((char) separator);
+        }
+        return path.append(fileName(index)).toString();
+    }
+
+    public String fileName(int index) {
+        int entry = entry(index);
+        return new String(names, nameStarts[entry], nameLength(entry), StandardCharsets.UTF_8);
+    }
+
+    public boolean hasSizes() {
+        return sizes != null;
+    }
+
+    public boolean hasLastModified() {
+        return lastModified != null;
+    }
+
+    public boolean has(Order by) {
+        return by == Order.SIZE ? hasSizes() : hasLastModified();
+    }
+
+    public long fileSize(int index) {
+        if (sizes == null) {
+            throw new IllegalStateException("File sizes were not collected for this result.");
+        }
+        return sizes[entry(index)];
+    }
+
+    public long lastModified(int index) {
+        if (lastModified == null) {
+            throw new IllegalStateException("Modification times were not collected for this result.");
+        }
+        return lastModified[entry(index)];
+    }
+
+    // Подмножество по позициям; хранилище общее
+    public ScanResults select(IntPredicate accept) {
+        int size = size();
+        int[] selected = new int[size];
+        int count = 0;
+        for (int i = 0; i < size; i++) {
+            if (accept.test(i)) {
+                selected[count++] = entry(i);
+            }
+        }
+        return count == size ? this : new ScanResults(this, Arrays.copyOf(selected, count));
+    }
+
+    // Первые n позиций
+    public ScanResults limit(int n) {
+        if (n >= size()) {
+            return this;
+        }
+        int[] selected = new int[n];
+        Arrays.setAll(selected, this::entry);
+        return new ScanResults(this, selected);
+    }
+
+    // k записей с наибольшим ключом по убыванию, при равном ключе — в порядке пути.
+    // Ограниченная куча: O(n log k) и без копии всего результата.
+    public ScanResults top(int k, Order by) {
+        if (!has(by)) {
+            throw new IllegalStateException("Result has no " + by.name().toLowerCase() + " to rank by.");
+        }
+        long[] keys = by == Order.SIZE ? sizes : lastModified;
+        int size = size();
+        // Худший кандидат наверху кучи
+        Comparator<Integer> worstFirst = (a, b) -> {
+            int byKey = Long.compare(keys[entry(a)], keys[entry(b)]);
+            return byKey != 0 ? byKey : Integer.compare(b, a);
+        };
+        PriorityQueue<Integer> heap = new PriorityQueue<>(Math.max(1, Math.min(k, size)), worstFirst);
+        for (int i = 0; i < size; i++) {
+            if (heap.size() < k) {
+                heap.add(i);
+            } else if (worstFirst.compare(i, heap.peek()) > 0) {
+                heap.poll();
+                heap.add(i);
+            }
+        }
+        int[] selected = new int[heap.size()];
+        for (int i = selected.length - 1; i >= 0; i--) {
+            selected[i] = entry(heap.poll());
+        }
+        return new ScanResults(this, selected);
+    }
+
+    // JSON-массив путей без промежуточных строк: байты пути собираются в один буфер
+    public void writeJson(JsonGenerator generator) throws IOException {
+        byte[] prefix = escape(rootPrefixBytes, 0, rootPrefixBytes.length);
+        byte[] buffer = new byte[256];
+        generator.writeStartArray();
+        for (int index = 0, size = size(); index < size; index++) {
+            int entry = entry(index);
+            byte[] dir = dirs[dirId(entry)];
+            int maxLength = prefix.length + (dir.length + 1 + nameLength(entry)) * 6;
+            if (buffer.length < maxLength) {
+                buffer = new byte[Math.max(maxLength, buffer.length * 2)];
+            }
+            System.arraycopy(prefix, 0, buffer, 0, prefix.length);
+            int length = prefix.length;
+            if (dir.length > 0) {
+                length = appendEscaped(dir, 0, dir.length, buffer, length);
+                buffer[length++] = separator;
+            }
+            length = appendEscaped(names, nameStarts[entry], nameLength(entry), buffer, length);
+            generator.writeRawUTF8String(buffer, 0, length);
+        }
+        generator.writeEndArray();
+    }
+
+    // Jackson пишет результат в ответ прямо из байтов, без списка строк
+    static class Serializer extends JsonSerializer<ScanResults> {
+        @Override
+        public void serialize(ScanResults results, JsonGenerator generator, SerializerProvider provider) throws IOException {
+            results.writeJson(generator);
+        }
+    }
+
+    private static byte[] escape(byte[] source, int offset, int length) {
+        byte[] buffer = new byte[length * 6];
+        return Arrays.copyOf(buffer, appendEscaped(source, offset, length, buffer, 0));
+    }
+
+    // Экранирование JSON для уже закодированного UTF-8: многобайтовые символы остаются как есть
+    private static int appendEscaped(byte[] source, int offset, int length, byte[] target, int position) {
+        for (int i = offset; i < offset + length; i++) {
+            int b = source[i] & 0xFF;
+            if (b == '"' || b == '\\') {
+                target[position++] = '\\';
+                target[position++] = (byte) b;
+            } else if (b < 0x20) {
+                target[position++] = '\\';
+                target[position++] = 'u';
+                target[position++] = '0';
+                target[position++] = '0';
+                target[position++] = (byte) Character.forDigit(b >> 4, 16);
+                target[position++] = (byte) Character.forDigit(b & 0xF, 16);
+            } else {
+                target[position++] = (byte) b;
+            }
+        }
+        return position;
+    }
+
+    private int nameLength(int entry) {
+        return nameStarts[entry + 1] - nameStarts[entry];
+    }
+
+    // Сортирует записи по пути (побайтово в UTF-8, то есть по кодовым точкам).
+    // Сортировка слиянием, половины больших диапазонов сортируются параллельно в пуле.
+    // Результат переписывается в отсортированном порядке и не держит ни order, ни dirIds.
+    ScanResults sorted(ForkJoinPool pool) {
+        int[] sorted = new int[size()];
+        Arrays.setAll(sorted, this::entry);
+        if (sorted.length > 1) {
+            pool.invoke(new SortTask(sorted, new int[sorted.length], 0, sorted.length));
+        }
+        return compact(sorted);
+    }
+
+    private ScanResults compact(int[] sorted) {
+        int count = sorted.length;
+        int namesLength = 0;
+        for (int entry : sorted) {
+            namesLength += nameLength(entry);
+        }
+        byte[] sortedNames = new byte[namesLength];
+        int[] sortedStarts = new int[count + 1];
+        long[] sortedSizes = sizes != null ? new long[count] : null;
+        long[] sortedLastModified = lastModified != null ? new long[count] : null;
+        int[] runStarts = new int[16];
+        int[] runIds = new int[16];
+        int runs = 0;
+        int offset = 0;
+        for (int i = 0; i < count; i++) {
+            int entry = sorted[i];
+            int dirId = dirId(entry);
+            if (runs == 0 || runIds[runs - 1] != dirId) {
+                if (runs == runStarts.length) {
+                    runStarts = Arrays.copyOf(runStarts, runs * 2);
+                    runIds = Arrays.copyOf(runIds, runs * 2);
+                }
+                runStarts[runs] = i;
+                runIds[runs++] = dirId;
+            }
+            int length = nameLength(entry);
+            System.arraycopy(names, nameStarts[entry], sortedNames, offset, length);
+            sortedStarts[i] = offset;
+            offset += length;
+            if (sortedSizes != null) {
+                sortedSizes[i] = sizes[entry];
+            }
+            if (sortedLastModified != null) {
+                sortedLastModified[i] = lastModified[entry];
+            }
+        }
+        sortedStarts[count] = offset;
+        return new ScanResults(rootPrefix, separator, dirs, sortedNames, sortedStarts, null,
+                Arrays.copyOf(runStarts, runs), Arrays.copyOf(runIds, runs), sortedSizes, sortedLastModified, null);
+    }
+
+    private final class SortTask extends RecursiveAction {
+        private final int[] entries;
+        private final int[] buffer;
+        private final int from;
+        private final int to;
+
+        SortTask(int[] entries, int[] buffer, int from, int to) {
+            this.entries = entries;
+            this.buffer = buffer;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= PARALLEL_SORT_THRESHOLD) {
+                sort(entries, buffer, from, to);
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new SortTask(entries, buffer, from, middle), new SortTask(entries, buffer, middle, to));
+            merge(entries, buffer, from, middle, to);
+        }
+    }
+
+    private void sort(int[] entries, int[] buffer, int from, int to) {
+        if (to - from <= INSERTION_SORT_THRESHOLD) {
+            for (int i = from + 1; i < to; i++) {
+                int entry = entries[i];
+                int j = i - 1;
+                while (j >= from && compare(entries[j], entry) > 0) {
+                    entries[j + 1] = entries[j];
+                    j--;
+                }
+                entries[j + 1] = entry;
+            }
+            return;
+        }
+        int middle = (from + to) >>> 1;
+        sort(entries, buffer, from, middle);
+        sort(entries, buffer, middle, to);
+        merge(entries, buffer, from, middle, to);
+    }
+
+    private void merge(int[] entries, int[] buffer, int from, int middle, int to) {
+        if (compare(entries[middle - 1], entries[middle]) <= 0) {
+            return;
+        }
+        System.arraycopy(entries, from, buffer, from, to - from);
+        int left = from;
+        int right = middle;
+        for (int i = from; i < to; i++) {
+            if (right >= to || (left < middle && compare(buffer[left], buffer[right]) <= 0)) {
+                entries[i] = buffer[left++];
+            } else {
+                entries[i] = buffer[right++];
+            }
+        }
+    }
+
+    // Сравнение путей "каталог/имя" без их сборки
+    int compare(int a, int b) {
+        int startA = nameStarts[a];
+        int startB = nameStarts[b];
+        int dirIdA = dirId(a);
+        int dirIdB = dirId(b);
+        if (dirIdA == dirIdB) {
+            return Arrays.compareUnsigned(names, startA, nameStarts[a + 1], names, startB, nameStarts[b + 1]);
+        }
+        byte[] dirA = dirs[dirIdA];
+        byte[] dirB = dirs[dirIdB];
+        int lengthA = (dirA.length > 0 ? dirA.length + 1 : 0) + nameLength(a);
+        int lengthB = (dirB.length > 0 ? dirB.length + 1 : 0) + nameLength(b);
+        int length = Math.min(lengthA, lengthB);
+        for (int i = 0; i < length; i++) {
+            int byteA = byteAt(dirA, startA, i);
+            int byteB = byteAt(dirB, startB, i);
+            if (byteA != byteB) {
+                return byteA - byteB;
+            }
+        }
+        return lengthA - lengthB;
+    }
+
+    // Тот же порядок для готовых строк: по кодовым точкам, что совпадает с побайтовым в UTF-8
+    static int comparePaths(String a, String b) {
+        int length = Math.min(a.length(), b.length());
+        for (int i = 0; i < length; i++) {
+            char charA = a.charAt(i);
+            char charB = b.charAt(i);
+            if (charA != charB) {
+                if (Character.isSurrogate(charA) || Character.isSurrogate(charB)) {
+                    return Integer.compare(a.codePointAt(i), b.codePointAt(i));
+                }
+                return charA - charB;
+            }
+        }
+        return a.length() - b.length();
+    }
+
+    private int byteAt(byte[] dir, int nameStart, int index) {
+        if (dir.length > 0) {
+            if (index < dir.length) {
+                return dir[index] & 0xFF;
+            }
+            if (index == dir.length) {
+                return separator & 0xFF;
+            }
+            index -= dir.length + 1;
+        }
+        return names[nameStart + index] & 0xFF;
+    }
+}
@@ -0,0 +1,122 @@
+package com.azati.file_scanner;
+
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+// Состояние одного запроса сканирования. Каждый /scan получает свою сессию,
+// поэтому параллельные запросы не видят фильтров и результатов друг друга.
+public class ScanSession {
+    final String id;
+    final ScanQuery query;
+    final Path startPath;
+    final ScanFilter filter;
+    // Какие поддиректории обходить
+    final WalkFilter walk;
+    // Этап проверки содержимого; null, если containsText не задан
+    ContentCheckStage contentStage;
+    // Триграммный индекс содержимого; null, если корень не проиндексирован
+    ContentIndex.Prefilter contentPrefilter;
+    // Сколько задач сессия может одновременно держать в общем пуле;
+    // при threads=adaptive меняется ConcurrencyTuner прямо во время скана
+    volatile int parallelism;
+    boolean adaptive;
+    // Сколько совпадений нужно (limit), 0 — все. Набрав их, сессия останавливает обход
+    long limit;
+    final long startedAt = System.currentTimeMillis();
+
+    // Найденные файлы для обычного ответа; null, если результаты уходят в свой sink
+    final ResultCollector results;
+    final ScanResultSink sink;
+    final ScanMetrics metrics;
+    final LongAdder matchCount = new LongAdder();
+    final LongAdder directoriesVisited = new LongAdder();
+    final LongAdder filesVisited = new LongAdder();
+    final LongAdder bytesRead = new LongAdder();
+    // Отменено пользователем
+    volatile boolean interrupted = false;
+    // Обход и проверки содержимого пора заканчивать: отмена или набран limit
+    volatile boolean stopped = false;
+
+    private final AtomicInteger forkedTasks = new AtomicInteger();
+    private final AtomicLong accepted = new AtomicLong();
+
+    public ScanSession(String id, ScanQuery query, ScanFilter filter, int parallelism,
+                       ScanResultSink sink, ScanMetrics metrics) {
+        this.id = id;
+        this.query = query;
+        this.startPath = query.root;
+        this.filter = filter;
+        this.walk = new WalkFilter(query);
+        this.metrics = metrics;
+        this.parallelism = parallelism;
+        // По умолчанию результаты копятся в компактном виде и отдаются одним списком.
+        // Размеры и даты храним всегда: по ним кэш сужает широкие результаты и отвечает на topK,
+        // а два long на файл немного рядом с байтами путей
+        this.results = sink == null ? new ResultCollector(query.root) : null;
+        this.sink = sink != null ? sink : results;
+    }
+
+    void addResult(String path, long size, long lastModified) {
+        if (limit > 0) {
+            // Потоки, нашедшие файл уже после limit-го, его отбрасывают
+            long taken = accepted.incrementAndGet();
+            if (taken > limit) {
+                return;
+            }
+            if (taken == limit) {
+                stopped = true;
+            }
+        }
+        matchCount.increment();
+        metrics.fileMatched();
+        sink.accept(path, size, lastModified);
+    }
+
+    // Счётчики сессии (для прогресса) и общие метрики приложения
+    void directoryVisited() {
+        directoriesVisited.increment();
+        metrics.directoryVisited();
+    }
+
+    void filesVisited(int count) {
+        filesVisited.add(count);
+        metrics.filesVisited(count);
+    }
+
+    void bytesRead(long count) {
+        bytesRead.add(count);
+        metrics.contentBytesRead(count);
+    }
+
+    // Не даём одной сессии занять весь общий пул: сверх лимита работа идёт inline
+    boolean tryAcquireForkSlot() {
+        while (true) {
+            int current = forkedTasks.get();
+            if (current >= parallelism) {
+                return false;
+            }
+            if (forkedTasks.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    void releaseForkSlot() {
+        forkedTasks.decrementAndGet();
+    }
+
+    boolean limitReached() {
+        return limit > 0 && accepted.get() >= limit;
+    }
+
+    public void interrupt() {
+        this.interrupted = true;
+        this.stopped = true;
+    }
+
+    public String getId() {
+        return id;
+    }
+}
@@ -0,0 +1,96 @@
+package com.azati.file_scanner;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+// Ограниченная очередь между потоками сканирования и потоком, пишущим ответ.
+// Когда клиент читает медленно, очередь заполняется и сканирование ждёт.
+// Ждёт через managedBlock: общий пул обхода на это время добавляет запасной поток,
+// и остальные сканы не стоят из-за медленного клиента. Клиент, который не забирает
+// ничего дольше stallTimeoutMillis, считается зависшим — его скан прерывается.
+public class StreamingResultSink implements ScanResultSink {
+    private static final long OFFER_TIMEOUT_MILLIS = 100;
+
+    private final BlockingQueue<String> queue;
+    private final long stallTimeoutNanos;
+    private ScanSession session;
+    private volatile boolean finished = false;
+    private volatile long lastTakenAt = System.nanoTime();
+
+    public StreamingResultSink(int capacity) {
+        this(capacity, 0);
+    }
+
+    // stallTimeoutMillis <= 0 — ждать клиента сколько угодно
+    public StreamingResultSink(int capacity, long stallTimeoutMillis) {
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.stallTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, stallTimeoutMillis));
+    }
+
+    void attach(ScanSession session) {
+        this.session = session;
+    }
+
+    @Override
+    public void accept(String path, long size, long lastModified) {
+        if (queue.offer(path)) {
+            return;
+        }
+        try {
+            ForkJoinPool.managedBlock(new Offer(path));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    void finish() {
+        finished = true;
+    }
+
+    // null означает, что сканирование закончено и очередь пуста
+    String next() throws InterruptedException {
+        while (true) {
+            String path = queue.poll(OFFER_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+            if (path != null) {
+                lastTakenAt = System.nanoTime();
+                return path;
+            }
+            if (finished && queue.isEmpty()) {
+                return null;
+            }
+        }
+    }
+
+    boolean hasBuffered() {
+        return !queue.isEmpty();
+    }
+
+    private final class Offer implements ForkJoinPool.ManagedBlocker {
+        private final String path;
+        private boolean done;
+
+        Offer(String path) {
+            this.path = path;
+        }
+
+        @Override
+        public boolean block() throws InterruptedException {
+            while (!isReleasable()) {
+                if (queue.offer(path, OFFER_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+                    done = true;
+                } else if (stallTimeoutNanos > 0 && System.nanoTime() - lastTakenAt > stallTimeoutNanos) {
+                    System.err.println("Stream client of scan " + session.id + " stopped reading, interrupting scan.");
+                    session.interrupt();
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public boolean isReleasable() {
+            return done || session.stopped || (done = queue.offer(path));
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package com.azati.file_scanner;
+
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+
+// Приёмник для topK: у каждого потока своя куча не больше k записей, поэтому память
+// не зависит от числа совпадений. В конце кучи сливаются и выбираются общие k.
+public class TopKCollector implements ScanResultSink {
+    private final Path root;
+    private final int k;
+    private final ScanResults.Order order;
+    private final Comparator<Candidate> worstFirst;
+    private final ConcurrentHashMap<Thread, PriorityQueue<Candidate>> heaps = new ConcurrentHashMap<>();
+
+    private record Candidate(String path, long size, long lastModified) {
+    }
+
+    public TopKCollector(Path root, int k, ScanResults.Order order) {
+        this.root = root;
+        this.k = k;
+        this.order = order;
+        Comparator<Candidate> byKey = order == ScanResults.Order.SIZE
+                ? Comparator.comparingLong(Candidate::size)
+                : Comparator.comparingLong(Candidate::lastModified);
+        // При равном ключе путь сравнивается как в ScanResults, чтобы кучи и итоговый отбор совпадали
+        this.worstFirst = byKey.thenComparing((a, b) -> ScanResults.comparePaths(b.path(), a.path()));
+    }
+
+    @Override
+    public void accept(String path, long size, long lastModified) {
+        PriorityQueue<Candidate> heap = heaps.computeIfAbsent(Thread.currentThread(), thread -> new PriorityQueue<>(worstFirst));
+        Candidate candidate = new Candidate(path, size, lastModified);
+        if (heap.size() < k) {
+            heap.add(candidate);
+        } else if (worstFirst.compare(candidate, heap.peek()) > 0) {
+            heap.poll();
+            heap.add(candidate);
+        }
+    }
+
+    // Не больше k на поток: итоговый отбор идёт по уже небольшому набору
+    public ScanResults build(ForkJoinPool pool) {
+        ResultCollector collector = new ResultCollector(root);
+        for (PriorityQueue<Candidate> heap : heaps.values()) {
+            for (Candidate candidate : heap) {
+                collector.accept(candidate.path(), candidate.size(), candidate.lastModified());
+            }
+        }
+        return collector.build(pool).top(k, order);
+    }
+}
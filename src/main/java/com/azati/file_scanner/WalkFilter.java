@@ -0,0 +1,175 @@
+package com.azati.file_scanner;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+
+// Правила обхода запроса, собранные один раз на сессию. Проверяются в preVisitDirectory,
+// поэтому исключённое поддерево (node_modules, .git, снапшоты) даже не открывается.
+// Шаблоны исключений — как в .gitignore: без "/" сравниваются с именем на любой глубине,
+// с "/" в начале или середине — с путём от корня скана, "/" в конце — только директории,
+// "**" — любое число сегментов. Имена сравниваются без учёта регистра, как маска.
+public class WalkFilter {
+    private final Path root;
+    private final int rootNameCount;
+    private final List<Pattern> patterns = new ArrayList<>();
+    private final boolean hasAnchoredPatterns;
+    private final int minDepth;
+    private final int maxDepth;
+    final boolean followLinks;
+    // Устройство корня; null — граница файловой системы не проверяется
+    private final Object rootFileSystem;
+
+    public WalkFilter(ScanQuery query) {
+        ScanQuery.WalkOptions options = query.walk;
+        this.root = query.root;
+        this.rootNameCount = root.getNameCount();
+        boolean anchored = false;
+        for (String exclude : options.excludes()) {
+            Pattern pattern = Pattern.compile(exclude);
+            patterns.add(pattern);
+            anchored |= pattern.anchored;
+        }
+        this.hasAnchoredPatterns = anchored;
+        this.minDepth = options.minDepth() != null ? options.minDepth() : 1;
+        this.maxDepth = options.maxDepth() != null ? options.maxDepth() : Integer.MAX_VALUE;
+        this.followLinks = options.followLinks();
+        Object fileSystem = null;
+        if (options.sameFileSystem()) {
+            try {
+                fileSystem = fileSystemOf(root);
+            } catch (IOException e) {
+                System.err.println("Cannot determine file system of " + root + ", sameFileSystem ignored: " + e.getMessage());
+            }
+        }
+        this.rootFileSystem = fileSystem;
+    }
+
+    // Входить ли в поддиректорию: глубина, исключения, файловая система
+    public boolean entersDirectory(Path dir) {
+        // Файлы внутри окажутся на глубину ниже самой директории
+        if (depth(dir) >= maxDepth) {
+            return false;
+        }
+        if (isExcluded(dir, true)) {
+            return false;
+        }
+        if (rootFileSystem != null) {
+            try {
+                return rootFileSystem.equals(fileSystemOf(dir));
+            } catch (IOException e) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Файл при обходе: его директории уже прошли entersDirectory
+    public boolean acceptsFile(Path file) {
+        return (minDepth <= 1 || depth(file) >= minDepth) && (patterns.isEmpty() || !isExcluded(file, false));
+    }
+
+    // Файл из индекса: обхода не было, поэтому проверяются и все его директории
+    public boolean acceptsIndexedFile(Path file) {
+        int depth = depth(file);
+        if (depth < minDepth || depth > maxDepth) {
+            return false;
+        }
+        if (patterns.isEmpty()) {
+            return true;
+        }
+        for (int end = rootNameCount + 1; end < file.getNameCount(); end++) {
+            if (isExcluded(file.subpath(0, end), true)) {
+                return false;
+            }
+        }
+        return !isExcluded(file, false);
+    }
+
+    private int depth(Path path) {
+        return path.getNameCount() - rootNameCount;
+    }
+
+    private boolean isExcluded(Path path, boolean directory) {
+        if (patterns.isEmpty()) {
+            return false;
+        }
+        String name = path.getFileName().toString();
+        Path relative = hasAnchoredPatterns ? path.subpath(rootNameCount, path.getNameCount()) : null;
+        for (Pattern pattern : patterns) {
+            if (pattern.matches(name, relative, directory)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Номер устройства дешевле FileStore: тот на Linux перечитывает таблицу монтирования
+    private static Object fileSystemOf(Path path) throws IOException {
+        try {
+            return Files.getAttribute(path, "unix:dev");
+        } catch (UnsupportedOperationException | IllegalArgumentException e) {
+            return Files.getFileStore(path);
+        }
+    }
+
+    private static final class Pattern {
+        // null означает "**"
+        final GlobMatcher[] segments;
+        final boolean anchored;
+        final boolean directoryOnly;
+
+        private Pattern(GlobMatcher[] segments, boolean anchored, boolean directoryOnly) {
+            this.segments = segments;
+            this.anchored = anchored;
+            this.directoryOnly = directoryOnly;
+        }
+
+        static Pattern compile(String exclude) {
+            String pattern = exclude.replace('\\', '/');
+            boolean directoryOnly = pattern.endsWith("/");
+            pattern = pattern.replaceAll("/+$", "");
+            boolean anchored = pattern.indexOf('/') >= 0;
+            pattern = pattern.replaceAll("^/+", "");
+            if (pattern.isEmpty()) {
+                throw new IllegalArgumentException("Invalid exclude pattern: " + exclude);
+            }
+            String[] parts = pattern.split("/+");
+            GlobMatcher[] segments = new GlobMatcher[parts.length];
+            for (int i = 0; i < parts.length; i++) {
+                segments[i] = parts[i].equals("**") ? null : new GlobMatcher(parts[i]);
+            }
+            return new Pattern(segments, anchored, directoryOnly);
+        }
+
+        boolean matches(String name, Path relative, boolean directory) {
+            if (directoryOnly && !directory) {
+                return false;
+            }
+            if (!anchored) {
+                return segments[0] == null || segments[0].matches(name);
+            }
+            return matches(relative, 0, 0);
+        }
+
+        private boolean matches(Path relative, int name, int segment) {
+            if (segment == segments.length) {
+                return name == relative.getNameCount();
+            }
+            if (segments[segment] == null) {
+                for (int skip = name; skip <= relative.getNameCount(); skip++) {
+                    if (matches(relative, skip, segment + 1)) {
+                        return true;
+                    }
+                }
+                return false;
+            }
+            return name < relative.getNameCount()
+                    && segments[segment].matches(relative.getName(name).toString())
+                    && matches(relative, name + 1, segment + 1);
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package com.azati.file_scanner;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.sun.net.httpserver.HttpServer;
+
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ClusterCoordinatorTest {
+
+	@TempDir
+	Path tempDir;
+
+	private SimpleMeterRegistry registry;
+	private FileScanService service;
+	private ClusterCoordinator coordinator;
+
+	@BeforeEach
+	void setUp() {
+		ScanCache cache = new ScanCache();
+		ReflectionTestUtils.setField(cache, "cacheTtlMillis", 0L);
+		ReflectionTestUtils.setField(cache, "maxWeight", 1000L);
+		registry = new SimpleMeterRegistry();
+		service = new FileScanService(cache, new FileIndex(), new ContentIndex(), new ConcurrencyTuner(),
+				new ScanMetrics(registry), 2, 4, 0, 2, 2, 16);
+		coordinator = new ClusterCoordinator(service);
+		// Второй корень принадлежит узлу, который не отвечает
+		ReflectionTestUtils.setField(coordinator, "nodesConfig", tempDir.resolve("remote") + "=http://127.0.0.1:1");
+		ReflectionTestUtils.setField(coordinator, "timeoutMillis", 5000L);
+		coordinator.start();
+	}
+
+	@AfterEach
+	void tearDown() {
+		coordinator.stop();
+		service.shutdown();
+	}
+
+	@Test
+	void mergesShardsInPathOrderAndReportsFailedNode() throws Exception {
+		Path first = Files.createDirectories(tempDir.resolve("b"));
+		Path second = Files.createDirectories(tempDir.resolve("a/nested"));
+		Files.createDirectories(tempDir.resolve("remote"));
+		Files.writeString(first.resolve("2.txt"), "x");
+		Files.writeString(first.resolve("1.txt"), "x");
+		Files.writeString(second.resolve("3.txt"), "x");
+		Files.writeString(tempDir.resolve("a/4.txt"), "x");
+
+		// a/nested входит в a: общие файлы выдаются один раз
+		ClusterCoordinator.DistributedScan scan = coordinator.start(null,
+				List.of(first.toString(), tempDir.resolve("a").toString(), second.toString(), tempDir.resolve("remote").toString()),
+				"*.txt", "1", null, null, null, null, null, ScanQuery.WalkOptions.NONE);
+		List<String> paths = new ArrayList<>();
+		String path;
+		while ((path = scan.next()) != null) {
+			paths.add(path);
+		}
+		scan.finish();
+
+		assertEquals(List.of(
+				tempDir.resolve("a/4.txt").toString(),
+				second.resolve("3.txt").toString(),
+				first.resolve("1.txt").toString(),
+				first.resolve("2.txt").toString()), paths);
+		assertEquals(1, scan.failures().size());
+		assertEquals(tempDir.resolve("remote").toString(), scan.failures().get(0).root());
+	}
+
+	@Test
+	void cancelBeforeLocalShardStartsStopsItsScan() throws Exception {
+		Path root = Files.createDirectories(tempDir.resolve("local/sub"));
+		Files.writeString(root.resolve("1.txt"), "x");
+		// Единственный поток координатора занят: шард стоит в очереди и ещё не создал сессию
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		((ExecutorService) ReflectionTestUtils.getField(coordinator, "executor")).shutdownNow();
+		ReflectionTestUtils.setField(coordinator, "executor", executor);
+		CountDownLatch release = new CountDownLatch(1);
+		executor.submit(() -> {
+			release.await();
+			return null;
+		});
+
+		ClusterCoordinator.DistributedScan scan = coordinator.start("early-cancel", List.of(tempDir.resolve("local").toString()),
+				"*.txt", "1", null, null, null, null, null, ScanQuery.WalkOptions.NONE);
+		assertTrue(coordinator.cancel("early-cancel"));
+		release.countDown();
+		// Задача после шарда выполнится, когда шард закончит
+		executor.submit(() -> null).get(30, TimeUnit.SECONDS);
+
+		assertNull(scan.next());
+		scan.finish();
+		assertTrue(service.getActiveScanIds().isEmpty());
+		assertEquals(0.0, registry.counter("scanner.directories.visited").count());
+	}
+
+	@Test
+	void reportsMissingRootsButNotEmptyOnes() throws Exception {
+		// Узел отвечает 404 на оба корня: пустой результат и отсутствующую директорию
+		HttpServer node = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		node.createContext("/scan", exchange -> {
+			boolean missing = exchange.getRequestURI().getQuery().contains("missing");
+			byte[] body = (missing ? "[\"Directory not found: /node/missing\"]" : "[\"Not found with mask: *.txt\"]")
+					.getBytes(StandardCharsets.UTF_8);
+			exchange.sendResponseHeaders(404, body.length);
+			exchange.getResponseBody().write(body);
+			exchange.close();
+		});
+		node.start();
+		ClusterCoordinator remote = new ClusterCoordinator(service);
+		ReflectionTestUtils.setField(remote, "nodesConfig", tempDir.resolve("node") + "=http://127.0.0.1:" + node.getAddress().getPort());
+		ReflectionTestUtils.setField(remote, "timeoutMillis", 5000L);
+		remote.start();
+		try {
+			Files.createDirectories(tempDir.resolve("local-empty"));
+			ClusterCoordinator.DistributedScan scan = remote.start(null,
+					List.of(tempDir.resolve("local-empty").toString(), tempDir.resolve("local-missing").toString(),
+							tempDir.resolve("node/empty").toString(), tempDir.resolve("node/missing").toString()),
+					"*.txt", "1", null, null, null, null, null, ScanQuery.WalkOptions.NONE);
+			assertNull(scan.next());
+			scan.finish();
+
+			assertEquals(List.of(tempDir.resolve("local-missing").toString(), tempDir.resolve("node/missing").toString()),
+					scan.failures().stream().map(ClusterCoordinator.ShardFailure::root).sorted().toList());
+		} finally {
+			remote.stop();
+			node.stop(0);
+		}
+	}
+}
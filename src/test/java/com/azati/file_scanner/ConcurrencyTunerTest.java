@@ -0,0 +1,91 @@
+package com.azati.file_scanner;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ConcurrencyTunerTest {
+
+	@TempDir
+	Path tempDir;
+
+	private final ScanMetrics metrics = new ScanMetrics(new SimpleMeterRegistry());
+	private final ExecutorService contentPool = Executors.newSingleThreadExecutor();
+	private final ConcurrencyTuner tuner = new ConcurrencyTuner();
+
+	@AfterEach
+	void tearDown() {
+		contentPool.shutdownNow();
+	}
+
+	private ScanSession session(Path root, String containsText) {
+		ScanQuery query = ScanQuery.of(root.toString(), "*", null, null, null, null, containsText);
+		ScanSession session = new ScanSession(null, query, new ScanFilter(query, 0, metrics), 1, null, metrics);
+		if (containsText != null) {
+			session.contentStage = new ContentCheckStage(session, contentPool, 1, 16);
+		}
+		return session;
+	}
+
+	@Test
+	void raisesLevelWhileThroughputGrowsAndBacksOffOnDrop() {
+		ScanSession session = session(tempDir, "needle");
+		// Пул обхода на 4 потока, содержимое — до 8 рабочих; первый скан начинает с половины
+		tuner.register(session, 4, 8);
+		assertEquals(4, session.parallelism);
+		assertEquals(4, session.contentStage.workers());
+
+		tuner.adjust(session, 100);
+		tuner.adjust(session, 200);
+		tuner.adjust(session, 300);
+		// Обход упёрся в пул, рабочие содержимого растут дальше
+		assertEquals(4, session.parallelism);
+		assertEquals(7, session.contentStage.workers());
+
+		tuner.adjust(session, 300);
+		assertEquals(7, session.contentStage.workers());
+		tuner.adjust(session, 150);
+		assertEquals(5, session.contentStage.workers());
+
+		tuner.unregister(session);
+		// Лучшая пропускная способность была на уровне 6
+		assertEquals(6, tuner.initialLevel(tempDir, 8));
+		assertEquals(4, tuner.initialLevel(tempDir, 4));
+
+		ScanSession next = session(tempDir, "needle");
+		tuner.register(next, 4, 8);
+		assertEquals(6, next.contentStage.workers());
+		assertEquals(4, next.parallelism);
+	}
+
+	@Test
+	void walkOnlyScanIsCappedByPool() {
+		ScanSession session = session(tempDir, null);
+		tuner.register(session, 2, 8);
+		assertEquals(1, session.parallelism);
+		tuner.adjust(session, 100);
+		tuner.adjust(session, 200);
+		tuner.adjust(session, 400);
+		assertEquals(2, session.parallelism);
+	}
+
+	@Test
+	void remembersBoundedNumberOfRoots() {
+		for (int i = 0; i < ConcurrencyTuner.MAX_REMEMBERED_ROOTS + 10; i++) {
+			ScanSession session = session(tempDir.resolve("root" + i), null);
+			tuner.register(session, 4, 4);
+			tuner.adjust(session, 100);
+			tuner.unregister(session);
+		}
+		assertEquals(ConcurrencyTuner.MAX_REMEMBERED_ROOTS, tuner.rememberedRoots());
+		// Самые старые корни вытеснены: для них снова половина пула
+		assertEquals(2, tuner.initialLevel(tempDir.resolve("root0"), 4));
+	}
+}
@@ -0,0 +1,74 @@
+package com.azati.file_scanner;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+class ContentCheckStageTest {
+
+	private static final int SCANS = 6;
+
+	@TempDir
+	Path tempDir;
+
+	private FileScanService service;
+
+	@BeforeEach
+	void setUp() {
+		ScanCache cache = new ScanCache();
+		ReflectionTestUtils.setField(cache, "cacheTtlMillis", 0L);
+		ReflectionTestUtils.setField(cache, "maxWeight", 1000L);
+		// Два потока содержимого по два на скан и очередь на один файл: одновременно
+		// пул могла бы занять только одна сессия
+		service = new FileScanService(cache, new FileIndex(), new ContentIndex(), new ConcurrencyTuner(),
+				new ScanMetrics(new SimpleMeterRegistry()), 2, SCANS, 0, 2, 2, 1);
+	}
+
+	@AfterEach
+	void tearDown() {
+		service.shutdown();
+	}
+
+	@Test
+	void concurrentContentScansAllFinishWhenWorkersAreScarce() throws Exception {
+		for (int dir = 0; dir < 10; dir++) {
+			Path sub = Files.createDirectories(tempDir.resolve("d" + dir));
+			for (int file = 0; file < 30; file++) {
+				Files.writeString(sub.resolve(file + ".txt"), "token-" + (file % SCANS) + "\n");
+			}
+		}
+
+		ExecutorService callers = Executors.newFixedThreadPool(SCANS);
+		try {
+			List<Future<ScanResults>> futures = new ArrayList<>();
+			for (int i = 0; i < SCANS; i++) {
+				String text = "token-" + i;
+				futures.add(callers.submit(() -> service.scan(null, tempDir.toString(), "*.txt", "2",
+						null, null, null, null, text)));
+			}
+			assertTimeoutPreemptively(Duration.ofSeconds(60), () -> {
+				for (Future<ScanResults> future : futures) {
+					// 300 файлов, токены по кругу
+					assertEquals(50, future.get().size());
+				}
+			});
+		} finally {
+			callers.shutdownNow();
+		}
+	}
+}
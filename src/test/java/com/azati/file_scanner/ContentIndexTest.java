@@ -0,0 +1,215 @@
+package com.azati.file_scanner;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ContentIndexTest {
+
+	@TempDir
+	Path tempDir;
+
+	@Test
+	void skipsFilesWithoutTextAndRereadsChangedFiles() throws Exception {
+		Path root = Files.createDirectories(tempDir.resolve("tree"));
+		Path match = Files.writeString(root.resolve("match.txt"), "first line\nneedle in a haystack\n");
+		Path other = Files.writeString(root.resolve("other.txt"), "nothing to see here");
+
+		ContentIndex index = startIndex(root);
+		ContentIndex.Prefilter prefilter = awaitPrefilter(index, root, "needle");
+		assertTrue(mayContain(prefilter, match));
+		assertFalse(mayContain(prefilter, other));
+		// Текст короче триграммы индекс отсечь не может
+		assertNull(index.prefilter(root, "ne"));
+
+		Files.writeString(other, "now with a needle");
+		Files.setLastModifiedTime(other, FileTime.fromMillis(Files.getLastModifiedTime(other).toMillis() + 5000));
+		assertTrue(mayContain(prefilter, other));
+		index.stop();
+
+		// После перезапуска индекс читается с диска, а не строится заново
+		ContentIndex reloaded = startIndex(root);
+		ContentIndex.Prefilter reloadedPrefilter = awaitPrefilter(reloaded, root, "haystack");
+		assertTrue(mayContain(reloadedPrefilter, match));
+		assertTrue(mayContain(reloadedPrefilter, other));
+		reloaded.stop();
+	}
+
+	@Test
+	void extractsDistinctSortedTrigrams() throws Exception {
+		Path file = Files.writeString(tempDir.resolve("abc.txt"), "abcabc");
+
+		int[] trigrams = ContentIndex.fileTrigrams(file);
+
+		assertTrue(trigrams.length == 3 && trigrams[0] < trigrams[1] && trigrams[1] < trigrams[2]);
+	}
+
+	@Test
+	void compactsRepeatedTrigramsOfLargeFiles() throws Exception {
+		Path file = Files.writeString(tempDir.resolve("repeat.txt"), "abcd".repeat(100_000) + "xyz");
+
+		int[] trigrams = ContentIndex.fileTrigrams(file);
+
+		// abc, bcd, cda, dab и хвост cdx, dxy, xyz
+		assertArrayEquals(ContentIndex.trigrams("abcdabcdxyz".getBytes(StandardCharsets.UTF_8)), trigrams);
+	}
+
+	@Test
+	void recordsSymlinksAsUnindexedOnce() throws Exception {
+		Path root = Files.createDirectories(tempDir.resolve("links"));
+		Path target = Files.writeString(root.resolve("target.txt"), "needle");
+		Path link = Files.createSymbolicLink(root.resolve("link.txt"), target);
+
+		ContentIndex index = startIndex(root);
+		ContentIndex.Prefilter prefilter = awaitPrefilter(index, root, "needle");
+		long linkSize = Files.readAttributes(link, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS).size();
+		long linkModified = Files.readAttributes(link, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS).lastModifiedTime().toMillis();
+
+		// Ссылка — всегда кандидат, но уже есть в сегменте и не ставится в очередь на обновление
+		assertTrue(prefilter.mayContain(link, linkSize, linkModified));
+		ContentIndex.IndexedRoot indexedRoot = index.indexedRoot(root);
+		assertTrue(indexedRoot.pending.isEmpty());
+		assertTrue(indexedRoot.updates.isEmpty());
+		index.stop();
+	}
+
+	@Test
+	void readsPostingsAcrossMappedChunks() throws Exception {
+		Path file = tempDir.resolve("chunks.postings");
+		ByteBuffer data = ByteBuffer.allocate(64);
+		for (int i = 0; i < 8; i++) {
+			data.putInt(i * 4, i);
+		}
+		data.putLong(32, Long.MAX_VALUE - 1);
+		data.putLong(40, 42);
+		Files.write(file, data.array());
+
+		// Куски по 8 байт вместо 1 ГБ: те же переходы через границу, что у файла больше 2 ГБ
+		ContentIndex.Postings postings = ContentIndex.Postings.map(file, 3);
+		for (int i = 0; i < 8; i++) {
+			assertEquals(i, postings.getInt(i * 4L));
+		}
+		assertEquals(Long.MAX_VALUE - 1, postings.getLong(32));
+		assertEquals(42, postings.getLong(40));
+	}
+
+	@Test
+	void mergesSpilledRunsIntoSortedPostings() throws Exception {
+		Path file = tempDir.resolve("merged.postings");
+		Random random = new Random(11);
+		TreeMap<Integer, TreeSet<Integer>> expected = new TreeMap<>();
+		// Серии по 16 пар: сотня документов даёт десятки серий на диске
+		try (ContentIndex.PostingsWriter writer = new ContentIndex.PostingsWriter(file, 16)) {
+			for (int docId = 0; docId < 100; docId++) {
+				int[] trigrams = random.ints(20, 0, 64).distinct().sorted().toArray();
+				writer.add(docId, trigrams);
+				for (int trigram : trigrams) {
+					expected.computeIfAbsent(trigram, t -> new TreeSet<>()).add(docId);
+				}
+			}
+			assertEquals(expected.size(), writer.finish(7));
+		}
+
+		ContentIndex.Postings postings = ContentIndex.Postings.map(file);
+		assertEquals(7, postings.getLong(4));
+		long tableEnd = 16 + expected.size() * 16L;
+		int entry = 0;
+		for (Map.Entry<Integer, TreeSet<Integer>> trigram : expected.entrySet()) {
+			long position = 16 + entry++ * 16L;
+			assertEquals(trigram.getKey(), postings.getInt(position));
+			List<Integer> docs = new ArrayList<>();
+			long offset = postings.getLong(position + 8);
+			for (int i = 0; i < postings.getInt(position + 4); i++) {
+				docs.add(postings.getInt(tableEnd + (offset + i) * 4));
+			}
+			assertEquals(new ArrayList<>(trigram.getValue()), docs);
+		}
+		// Серии и части файла удалены, остался только итоговый
+		try (Stream<Path> files = Files.list(tempDir)) {
+			assertEquals(List.of(file), files.toList());
+		}
+	}
+
+	@Test
+	void rebuildsWithSpilledRunsAndReusesOldSegment() throws Exception {
+		Path root = Files.createDirectories(tempDir.resolve("runs"));
+		for (int i = 0; i < 50; i++) {
+			Files.writeString(root.resolve(i + ".txt"), i % 7 == 0 ? "a needle " + i : "just hay " + i);
+		}
+		ContentIndex index = newIndex(root);
+		ReflectionTestUtils.setField(index, "postingsRunPairs", 32);
+		index.start();
+		ContentIndex.Prefilter prefilter = awaitPrefilter(index, root, "needle");
+		for (int i = 0; i < 50; i++) {
+			assertEquals(i % 7 == 0, mayContain(prefilter, root.resolve(i + ".txt")), "file " + i);
+		}
+
+		// Перестройка берёт неизменные файлы из старого сегмента через те же серии
+		ReflectionTestUtils.invokeMethod(index, "rebuildAll");
+		ContentIndex.Prefilter rebuilt = index.prefilter(root, "needle");
+		for (int i = 0; i < 50; i++) {
+			assertEquals(i % 7 == 0, mayContain(rebuilt, root.resolve(i + ".txt")), "file " + i);
+			// Запрос, начатый до перестройки, дочитывает своё поколение
+			assertEquals(i % 7 == 0, mayContain(prefilter, root.resolve(i + ".txt")), "file " + i);
+		}
+		// Новое поколение записано отдельным файлом, старое удалено после переключения
+		try (Stream<Path> files = Files.list(tempDir.resolve("index"))) {
+			assertEquals(1, files.filter(file -> file.toString().endsWith(".postings")).count());
+		}
+		index.stop();
+	}
+
+	private ContentIndex startIndex(Path root) throws Exception {
+		ContentIndex index = newIndex(root);
+		index.start();
+		return index;
+	}
+
+	private ContentIndex newIndex(Path root) {
+		ContentIndex index = new ContentIndex();
+		ReflectionTestUtils.setField(index, "enabled", true);
+		ReflectionTestUtils.setField(index, "rootsConfig", root.toString());
+		ReflectionTestUtils.setField(index, "indexDir", tempDir.resolve("index").toString());
+		ReflectionTestUtils.setField(index, "maxFileSize", 1024L * 1024);
+		ReflectionTestUtils.setField(index, "rebuildIntervalMillis", 3600000L);
+		return index;
+	}
+
+	private static ContentIndex.Prefilter awaitPrefilter(ContentIndex index, Path root, String text) throws InterruptedException {
+		ContentIndex.Prefilter prefilter = null;
+		for (int i = 0; i < 100 && prefilter == null; i++) {
+			prefilter = index.prefilter(root, text);
+			if (prefilter == null) {
+				Thread.sleep(50);
+			}
+		}
+		assertNotNull(prefilter);
+		return prefilter;
+	}
+
+	private static boolean mayContain(ContentIndex.Prefilter prefilter, Path file) throws Exception {
+		return prefilter.mayContain(file, Files.size(file), Files.getLastModifiedTime(file).toMillis());
+	}
+}
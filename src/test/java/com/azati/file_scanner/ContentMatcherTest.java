@@ -0,0 +1,65 @@
+package com.azati.file_scanner;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ContentMatcherTest {
+
+	@TempDir
+	Path tempDir;
+
+	@Test
+	void findsTextSpanningChunkBoundary() throws Exception {
+		byte[] data = new byte[ContentMatcher.CHUNK_SIZE * 3];
+		Arrays.fill(data, (byte) 'a');
+		byte[] needle = "needle".getBytes(StandardCharsets.UTF_8);
+		System.arraycopy(needle, 0, data, ContentMatcher.CHUNK_SIZE * 2 - 3, needle.length);
+		Path file = Files.write(tempDir.resolve("big.log"), data);
+
+		assertTrue(new ContentMatcher("needle").matches(file, null));
+		assertFalse(new ContentMatcher("needles").matches(file, null));
+	}
+
+	@Test
+	void matchesUtf8TextInSmallFile() throws Exception {
+		Path file = Files.writeString(tempDir.resolve("small.txt"), "поиск по тексту");
+
+		assertTrue(new ContentMatcher("по тексту").matches(file, null));
+		assertFalse(new ContentMatcher("текстом").matches(file, null));
+	}
+
+	@Test
+	void skipsBinaryFilesWhenSniffing() throws Exception {
+		byte[] data = "needle\0\0\0".getBytes(StandardCharsets.UTF_8);
+		Path file = Files.write(tempDir.resolve("data.unknown"), data);
+
+		assertEquals(ContentMatcher.Result.BINARY, new ContentMatcher("needle").search(file, null, true));
+		assertEquals(ContentMatcher.Result.FOUND, new ContentMatcher("needle").search(file, null, false));
+	}
+
+	@Test
+	void searchesDecompressedStream() throws Exception {
+		ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+		try (GZIPOutputStream out = new GZIPOutputStream(compressed)) {
+			out.write("line one\nline two with needle\n".getBytes(StandardCharsets.UTF_8));
+		}
+
+		ContentMatcher.Result result = new ContentMatcher("needle")
+				.search(new GZIPInputStream(new ByteArrayInputStream(compressed.toByteArray())), null, true);
+
+		assertEquals(ContentMatcher.Result.FOUND, result);
+	}
+}
@@ -0,0 +1,94 @@
+package com.azati.file_scanner;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class DirectoryScanTaskTest {
+
+	@TempDir
+	Path tempDir;
+
+	private SimpleMeterRegistry registry;
+	private FileScanService service;
+
+	@BeforeEach
+	void setUp() {
+		ScanCache cache = new ScanCache();
+		ReflectionTestUtils.setField(cache, "cacheTtlMillis", 0L);
+		ReflectionTestUtils.setField(cache, "maxWeight", 1000L);
+		registry = new SimpleMeterRegistry();
+		service = new FileScanService(cache, new FileIndex(), new ContentIndex(), new ConcurrencyTuner(),
+				new ScanMetrics(registry), 4, 2, 0, 2, 2, 16);
+	}
+
+	@AfterEach
+	void tearDown() {
+		service.shutdown();
+	}
+
+	private List<String> walkFileTree(List<Path> directories) throws IOException {
+		List<String> files = new ArrayList<>();
+		Files.walkFileTree(tempDir, new SimpleFileVisitor<>() {
+			@Override
+			public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+				directories.add(dir);
+				return FileVisitResult.CONTINUE;
+			}
+
+			@Override
+			public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+				files.add(file.toString());
+				return FileVisitResult.CONTINUE;
+			}
+		});
+		files.sort(null);
+		return files;
+	}
+
+	@Test
+	void matchesWalkFileTreeOnLargeAndDeepDirectories() throws Exception {
+		// Размеры вокруг границы пачки: ровно одна, на одну больше и несколько пачек с хвостом
+		int[] sizes = {DirectoryScanTask.ENTRY_BATCH_SIZE, DirectoryScanTask.ENTRY_BATCH_SIZE + 1,
+				DirectoryScanTask.ENTRY_BATCH_SIZE * 3 + 17};
+		for (int size : sizes) {
+			Path wide = Files.createDirectories(tempDir.resolve("wide" + size));
+			for (int i = 0; i < size; i++) {
+				// Каждая десятая запись — поддиректория, чтобы пачки форкали обход глубже
+				if (i % 10 == 0) {
+					Files.writeString(Files.createDirectories(wide.resolve("sub" + i)).resolve("inner.txt"), "x");
+				} else {
+					Files.writeString(wide.resolve("f" + i + ".txt"), "x");
+				}
+			}
+		}
+		Path deep = tempDir;
+		for (int level = 0; level < 30; level++) {
+			deep = Files.createDirectories(deep.resolve("level" + level));
+			Files.writeString(deep.resolve("file" + level + ".log"), "x");
+		}
+		Files.createDirectories(tempDir.resolve("empty"));
+
+		List<Path> directories = new ArrayList<>();
+		List<String> expected = walkFileTree(directories);
+		for (int round = 0; round < 3; round++) {
+			assertEquals(expected, service.scan(tempDir.toString(), "*", "4", null, null, null, null, null));
+		}
+
+		assertEquals(3.0 * directories.size(), registry.counter("scanner.directories.visited").count());
+	}
+}
@@ -0,0 +1,48 @@
+package com.azati.file_scanner;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class DuplicateFinderTest {
+
+	@TempDir
+	Path tempDir;
+
+	@Test
+	void groupsIdenticalFilesAndSeparatesSameEdges() throws Exception {
+		byte[] content = new byte[DuplicateFinder.BLOCK_SIZE * 4];
+		Arrays.fill(content, (byte) 'x');
+		byte[] sameEdges = content.clone();
+		// Отличие в середине: края совпадают, различает только полный хэш
+		sameEdges[content.length / 2] = 'y';
+
+		Path original = Files.write(tempDir.resolve("original.bin"), content);
+		Path copy = Files.write(tempDir.resolve("copy.bin"), content);
+		Path middleDiffers = Files.write(tempDir.resolve("middle.bin"), sameEdges);
+		Path small = Files.writeString(tempDir.resolve("small.txt"), "tiny");
+		Path smallCopy = Files.writeString(tempDir.resolve("small-copy.txt"), "tiny");
+		Path unique = Files.writeString(tempDir.resolve("unique.txt"), "only");
+
+		ScanSession session = new ScanSession("test", ScanQuery.of(tempDir.toString(), "*", null, null, null, null, null),
+				null, 1, null, new ScanMetrics(new SimpleMeterRegistry()));
+		ResultCollector collector = new ResultCollector(tempDir);
+		for (Path file : List.of(original, copy, middleDiffers, small, smallCopy, unique)) {
+			collector.accept(file.toString(), Files.size(file), 0);
+		}
+
+		List<DuplicateFinder.DuplicateGroup> groups = new DuplicateFinder(session).find(collector.build(ForkJoinPool.commonPool()));
+
+		assertEquals(2, groups.size());
+		assertEquals(List.of(copy.toString(), original.toString()), groups.get(0).paths());
+		assertEquals(List.of(smallCopy.toString(), small.toString()), groups.get(1).paths());
+	}
+}
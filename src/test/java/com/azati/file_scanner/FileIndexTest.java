@@ -0,0 +1,86 @@
+package com.azati.file_scanner;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Set;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FileIndexTest {
+
+	@TempDir
+	Path tempDir;
+
+	private FileIndex index;
+
+	@AfterEach
+	void tearDown() {
+		if (index != null) {
+			index.stop();
+		}
+	}
+
+	private Path root() {
+		return tempDir.resolve("root");
+	}
+
+	private FileIndex.IndexedRoot startIndex() throws Exception {
+		index = new FileIndex();
+		ReflectionTestUtils.setField(index, "enabled", true);
+		ReflectionTestUtils.setField(index, "rootsConfig", root().toString());
+		ReflectionTestUtils.setField(index, "indexDir", tempDir.resolve("index").toString());
+		ReflectionTestUtils.setField(index, "reconcileIntervalMillis", 3_600_000L);
+		index.start();
+		awaitTrue(() -> index.find(root()) != null);
+		FileIndex.IndexedRoot indexedRoot = index.find(root());
+		assertNotNull(indexedRoot);
+		return indexedRoot;
+	}
+
+	private static void awaitTrue(BooleanSupplier condition) throws InterruptedException {
+		for (int i = 0; i < 1000 && !condition.getAsBoolean(); i++) {
+			Thread.sleep(10);
+		}
+		assertTrue(condition.getAsBoolean());
+	}
+
+	@Test
+	void reconcilesLoadedIndexWithChangesMadeWhileStopped() throws Exception {
+		Files.createDirectories(root().resolve("sub"));
+		Files.writeString(root().resolve("kept.txt"), "x");
+		Files.writeString(root().resolve("sub/deleted.txt"), "x");
+		assertEquals(Set.of("kept.txt", "sub/deleted.txt"), startIndex().files.keySet());
+		index.stop();
+
+		// Сервис остановлен: эти изменения видны только сверкой после загрузки
+		Files.delete(root().resolve("sub/deleted.txt"));
+		Files.writeString(root().resolve("sub/created.txt"), "xyz");
+
+		// Загруженный индекс готов сразу, сверка догоняет его в фоне
+		FileIndex.IndexedRoot reloaded = startIndex();
+		awaitTrue(() -> reloaded.files.keySet().equals(Set.of("kept.txt", "sub/created.txt")));
+		assertEquals(3, reloaded.files.get("sub/created.txt").size());
+	}
+
+	@Test
+	void appliesWatchEvents() throws Exception {
+		Files.createDirectories(root().resolve("sub"));
+		Files.writeString(root().resolve("sub/old.txt"), "x");
+		FileIndex.IndexedRoot indexedRoot = startIndex();
+
+		Files.writeString(root().resolve("sub/new.txt"), "x");
+		Files.createDirectories(root().resolve("added/deep"));
+		Files.writeString(root().resolve("added/deep/file.txt"), "x");
+		Files.delete(root().resolve("sub/old.txt"));
+
+		awaitTrue(() -> indexedRoot.files.keySet().equals(Set.of("sub/new.txt", "added/deep/file.txt")));
+	}
+}
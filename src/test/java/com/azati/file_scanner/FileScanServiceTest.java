@@ -0,0 +1,147 @@
+package com.azati.file_scanner;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FileScanServiceTest {
+
+	@TempDir
+	Path tempDir;
+
+	private FileScanService service;
+
+	@BeforeEach
+	void setUp() throws Exception {
+		ScanCache cache = new ScanCache();
+		// Кэш выключен: каждый запрос действительно сканирует
+		ReflectionTestUtils.setField(cache, "cacheTtlMillis", 0L);
+		ReflectionTestUtils.setField(cache, "maxWeight", 1000L);
+		// Два слота на восемь запросов: остальные ждут в честной очереди семафора
+		service = new FileScanService(cache, new FileIndex(), new ContentIndex(), new ConcurrencyTuner(),
+				new ScanMetrics(new SimpleMeterRegistry()), 2, 2, 0, 2, 2, 16);
+
+		String[] extensions = {"txt", "log", "csv"};
+		for (int dir = 0; dir < 6; dir++) {
+			Path sub = Files.createDirectories(tempDir.resolve("d" + dir + "/nested"));
+			for (int file = 0; file < 40; file++) {
+				Path target = (file % 2 == 0 ? sub : sub.getParent()).resolve("f" + file + "." + extensions[file % 3]);
+				// Размер от 0 до ~3 КБ, в каждом пятом файле — искомое слово
+				Files.writeString(target, (file % 5 == 0 ? "needle " : "hay ") + "x".repeat(file * 80));
+			}
+		}
+	}
+
+	@AfterEach
+	void tearDown() {
+		service.shutdown();
+	}
+
+	private List<String> expected(Predicate<Path> accept) throws Exception {
+		try (Stream<Path> files = Files.walk(tempDir)) {
+			return files.filter(Files::isRegularFile).filter(accept).map(Path::toString).sorted().toList();
+		}
+	}
+
+	private static long size(Path file) {
+		try {
+			return Files.size(file);
+		} catch (Exception e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	private static boolean contains(Path file, String text) {
+		try {
+			return Files.readString(file).contains(text);
+		} catch (Exception e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	@Test
+	void parallelScansWithDifferentFiltersAreIndependent() throws Exception {
+		String root = tempDir.toString();
+		List<Callable<ScanResults>> scans = List.of(
+				() -> service.scan(root, "*.txt", "2", null, null, null, null, null),
+				() -> service.scan(root, "*.log", "1", null, null, null, null, null),
+				() -> service.scan(root, "*.csv", "2", null, null, null, null, null),
+				() -> service.scan(root, "*", "2", 2L, null, null, null, null),
+				() -> service.scan(root, "*", "1", null, 1L, null, null, null),
+				() -> service.scan(root, "*.txt", "2", null, null, null, null, "needle"),
+				() -> service.scan(root, "*", "2", null, null, null, null, "needle"),
+				() -> service.scan(tempDir.resolve("d3").toString(), "*.log", "2", null, null, null, null, null));
+		List<List<String>> expected = List.of(
+				expected(file -> file.toString().endsWith(".txt")),
+				expected(file -> file.toString().endsWith(".log")),
+				expected(file -> file.toString().endsWith(".csv")),
+				expected(file -> size(file) >= 2048),
+				expected(file -> size(file) <= 1024),
+				expected(file -> file.toString().endsWith(".txt") && contains(file, "needle")),
+				expected(file -> contains(file, "needle")),
+				expected(file -> file.startsWith(tempDir.resolve("d3")) && file.toString().endsWith(".log")));
+
+		ExecutorService callers = Executors.newFixedThreadPool(scans.size());
+		try {
+			// Все запросы стартуют одновременно и дважды, чтобы сессии перемешались
+			CountDownLatch start = new CountDownLatch(1);
+			List<Future<ScanResults>> futures = new ArrayList<>();
+			for (int round = 0; round < 2; round++) {
+				for (Callable<ScanResults> scan : scans) {
+					futures.add(callers.submit(() -> {
+						start.await();
+						return scan.call();
+					}));
+				}
+			}
+			start.countDown();
+			assertTimeoutPreemptively(Duration.ofSeconds(60), () -> {
+				for (int i = 0; i < futures.size(); i++) {
+					assertEquals(expected.get(i % scans.size()), futures.get(i).get(), "scan #" + i);
+				}
+			});
+		} finally {
+			callers.shutdownNow();
+		}
+		assertTrue(service.getActiveScanIds().isEmpty());
+	}
+
+	@Test
+	void broadScanServesNarrowerSizeDateAndTopKQueriesFromCache() throws Exception {
+		ScanCache cache = (ScanCache) ReflectionTestUtils.getField(service, "scanCache");
+		ReflectionTestUtils.setField(cache, "cacheTtlMillis", 60_000L);
+		String root = tempDir.toString();
+		service.scan(root, "*", "2", null, null, null, null, null);
+
+		assertEquals(expected(file -> file.toString().endsWith(".csv") && size(file) >= 1024),
+				service.scan(root, "*.csv", "2", 1L, null, null, null, null));
+		assertEquals(expected(file -> true),
+				service.scan(root, "*", "2", null, null, "2000-01-01", null, null));
+		assertEquals(3, service.scan(null, root, "*", "2", null, null, null, null, null,
+				ScanQuery.WalkOptions.NONE, null, 3, "size").size());
+		// Ни один из трёх запросов не сканировал заново
+		assertEquals(1, cache.stats().entries());
+		assertEquals(2, cache.stats().subsumedHits());
+		assertEquals(1, cache.stats().hits());
+	}
+}
@@ -0,0 +1,28 @@
+package com.azati.file_scanner;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class GlobMatcherTest {
+
+	@Test
+	void matchesSimpleMasksIgnoringCase() {
+		assertTrue(new GlobMatcher("*").matches("anything.bin"));
+		assertTrue(new GlobMatcher("*.TXT").matches("notes.txt"));
+		assertFalse(new GlobMatcher("*.txt").matches("notes.txt.bak"));
+		assertTrue(new GlobMatcher("report*").matches("Report-2024.pdf"));
+		assertTrue(new GlobMatcher("readme.md").matches("README.md"));
+		assertFalse(new GlobMatcher("readme.md").matches("readme.mdx"));
+	}
+
+	@Test
+	void matchesGeneralMasks() {
+		assertTrue(new GlobMatcher("f?le*.log").matches("file-01.log"));
+		assertTrue(new GlobMatcher("*a*b*").matches("xxaxxbxx"));
+		assertFalse(new GlobMatcher("*a*b").matches("xxaxxbxx"));
+		assertTrue(new GlobMatcher("a+b(1).txt").matches("a+b(1).txt"));
+		assertFalse(new GlobMatcher("??.txt").matches("abc.txt"));
+	}
+}
@@ -0,0 +1,119 @@
+package com.azati.file_scanner;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class ScanCacheTest {
+
+	private static final long OLD = LocalDate.parse("2023-06-01").atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
+	private static final long NEW = LocalDate.parse("2025-06-01").atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
+
+	@TempDir
+	Path tempDir;
+
+	private ScanCache cache;
+
+	@BeforeEach
+	void setUp() {
+		cache = new ScanCache();
+		ReflectionTestUtils.setField(cache, "cacheTtlMillis", 60_000L);
+		ReflectionTestUtils.setField(cache, "maxWeight", 1000L);
+	}
+
+	private ScanQuery query(String root, String mask, Long minSizeKB, String modifiedAfter) {
+		return ScanQuery.of(root, mask, minSizeKB, null, modifiedAfter, null, null);
+	}
+
+	private ScanResults results(boolean withMetadata, String... files) {
+		ResultCollector collector = new ResultCollector(tempDir, withMetadata, withMetadata);
+		for (int i = 0; i < files.length; i++) {
+			// Чётные — маленькие и старые, нечётные — большие и новые
+			collector.accept(tempDir.resolve(files[i]).toString(), i % 2 == 0 ? 100 : 10_000, i % 2 == 0 ? OLD : NEW);
+		}
+		return collector.build(ForkJoinPool.commonPool());
+	}
+
+	private String path(String file) {
+		return tempDir.resolve(file).toString();
+	}
+
+	@Test
+	void servesNarrowerQueriesFromCoveringEntry() {
+		cache.put(query(tempDir.toString(), "*", null, null),
+				results(true, "a.log", "b.log", "sub/c.txt", "sub/d.log"));
+
+		assertEquals(List.of(path("a.log"), path("b.log"), path("sub/d.log")),
+				cache.find(query(tempDir.toString(), "*.log", null, null)));
+		assertEquals(List.of(path("b.log"), path("sub/d.log")),
+				cache.find(query(tempDir.toString(), "*", 5L, null)));
+		assertEquals(List.of(path("b.log"), path("sub/d.log")),
+				cache.find(query(tempDir.toString(), "*", null, "2024-01-01")));
+		assertEquals(List.of(path("sub/c.txt"), path("sub/d.log")),
+				cache.find(query(tempDir.resolve("sub").toString(), "*", null, null)));
+		assertEquals(4, cache.stats().subsumedHits());
+	}
+
+	@Test
+	void missesQueriesTheEntryDoesNotCover() {
+		cache.put(query(tempDir.toString(), "*.log", null, null), results(true, "a.log"));
+
+		assertNull(cache.find(query(tempDir.toString(), "*", null, null)));
+		assertNull(cache.find(ScanQuery.of(tempDir.toString(), "*.log", null, null, null, null, "needle")));
+		assertNull(cache.find(query(tempDir.getParent().toString(), "*.log", null, null)));
+		assertEquals(3, cache.stats().misses());
+	}
+
+	@Test
+	void pathsOnlyEntryNarrowsByMaskButNotBySize() {
+		cache.put(query(tempDir.toString(), "*", null, null), results(false, "a.log", "b.txt"));
+
+		assertEquals(List.of(path("a.log")), cache.find(query(tempDir.toString(), "*.log", null, null)));
+		assertNull(cache.find(query(tempDir.toString(), "*", 5L, null)));
+	}
+
+	@Test
+	void evictsLeastRecentlyUsedByWeight() {
+		ReflectionTestUtils.setField(cache, "maxWeight", 5L);
+		ScanQuery first = query(tempDir.resolve("first").toString(), "*", null, null);
+		ScanQuery second = query(tempDir.resolve("second").toString(), "*", null, null);
+		ScanQuery third = query(tempDir.resolve("third").toString(), "*", null, null);
+		cache.put(first, results(true, "1", "2", "3"));
+		cache.put(second, results(true, "4", "5"));
+		// Обращение делает first свежее second
+		assertNotNull(cache.find(first));
+		cache.put(third, results(true, "6", "7"));
+
+		assertNull(cache.find(second));
+		assertNotNull(cache.find(first));
+		assertNotNull(cache.find(third));
+		assertEquals(1, cache.stats().evictions());
+		assertEquals(5, cache.stats().weight());
+	}
+
+	@Test
+	void expiresEntriesAfterTtl() throws Exception {
+		ReflectionTestUtils.setField(cache, "cacheTtlMillis", 50L);
+		ScanQuery query = query(tempDir.toString(), "*", null, null);
+		cache.put(query, results(true, "a.log"));
+		assertNotNull(cache.find(query));
+
+		Thread.sleep(100);
+		assertNull(cache.find(query));
+		assertNull(cache.find(query(tempDir.toString(), "*.log", null, null)));
+		cache.purgeExpired();
+		assertEquals(0, cache.stats().entries());
+		assertEquals(1, cache.stats().expirations());
+	}
+}
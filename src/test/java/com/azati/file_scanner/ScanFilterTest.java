@@ -0,0 +1,73 @@
+package com.azati.file_scanner;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ScanFilterTest {
+
+	@TempDir
+	Path tempDir;
+
+	@Test
+	void findsTextInsideGzipAndZipEntries() throws Exception {
+		Path gzip = tempDir.resolve("app.log.1.gz");
+		try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(gzip))) {
+			out.write("started\nERROR disk full\n".getBytes(StandardCharsets.UTF_8));
+		}
+		Path zip = tempDir.resolve("logs.zip");
+		try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(zip))) {
+			out.putNextEntry(new ZipEntry("nested/server.log"));
+			out.write("ERROR timeout\n".getBytes(StandardCharsets.UTF_8));
+			out.putNextEntry(new ZipEntry("nested/blob.dat"));
+			out.write(new byte[]{'E', 'R', 'R', 'O', 'R', 0, 0});
+			out.putNextEntry(new ZipEntry("clean.log"));
+			out.write("all good\n".getBytes(StandardCharsets.UTF_8));
+		}
+
+		ScanQuery query = ScanQuery.of(tempDir.toString(), "*", null, null, null, null, "ERROR");
+		ScanMetrics metrics = new ScanMetrics(new SimpleMeterRegistry());
+		ScanFilter filter = new ScanFilter(query, 0, metrics);
+		ScanSession session = new ScanSession("test", query, filter, 1, null, metrics);
+		for (Path file : List.of(gzip, zip)) {
+			filter.checkContent(file, Files.size(file), 0, session);
+		}
+
+		assertEquals(List.of(gzip.toString(), zip + "!/nested/server.log"),
+				new ArrayList<>(session.results.build(ForkJoinPool.commonPool())));
+	}
+
+	@Test
+	void matchesRotatedLogsByArchiveNameOnlyForContentSearch() {
+		ScanMetrics metrics = new ScanMetrics(new SimpleMeterRegistry());
+		ScanQuery query = ScanQuery.of(tempDir.toString(), "*.log", null, null, null, null, "ERROR");
+		ScanFilter filter = new ScanFilter(query, 0, metrics);
+
+		assertTrue(filter.acceptsMetadata(tempDir.resolve("app.log.gz"), 10, 0));
+		assertFalse(filter.acceptsMetadata(tempDir.resolve("app.zip"), 10, 0));
+		assertFalse(filter.acceptsCachedResult("app.zip!/server.log", 10, 0));
+		assertTrue(filter.acceptsCachedResult("server.log", 10, 0));
+		assertTrue(filter.acceptsCachedResult("app.log.gz", 10, 0));
+
+		// Без поиска по содержимому маска не расширяется на архивы
+		ScanFilter plain = new ScanFilter(ScanQuery.of(tempDir.toString(), "*.log", null, null, null, null, null), 0, metrics);
+		assertFalse(plain.acceptsMetadata(tempDir.resolve("app.log.gz"), 10, 0));
+		assertFalse(plain.acceptsCachedResult("app.log.gz", 10, 0));
+		assertTrue(plain.acceptsMetadata(tempDir.resolve("app.log"), 10, 0));
+	}
+}
@@ -0,0 +1,116 @@
+package com.azati.file_scanner;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ScanJobServiceTest {
+
+	@TempDir
+	Path tempDir;
+
+	private FileScanService service;
+	private ScanJobService jobs;
+
+	@BeforeEach
+	void setUp() {
+		ScanCache cache = new ScanCache();
+		ReflectionTestUtils.setField(cache, "cacheTtlMillis", 0L);
+		ReflectionTestUtils.setField(cache, "maxWeight", 1000L);
+		ScanMetrics metrics = new ScanMetrics(new SimpleMeterRegistry());
+		service = new FileScanService(cache, new FileIndex(), new ContentIndex(), new ConcurrencyTuner(),
+				metrics, 2, 1, 0, 2, 2, 16);
+		// Один исполнитель: очередь разбирается строго по приоритету
+		jobs = new ScanJobService(service, metrics, 1, 10);
+		ReflectionTestUtils.setField(jobs, "ttlMillis", 60_000L);
+		ReflectionTestUtils.setField(jobs, "maxPageSize", 2);
+	}
+
+	@AfterEach
+	void tearDown() {
+		jobs.shutdown();
+		service.shutdown();
+	}
+
+	private ScanJobService.JobRequest request(String mask) {
+		return new ScanJobService.JobRequest(tempDir.toString(), mask, "1", null, null, null, null, null,
+				ScanQuery.WalkOptions.NONE, null, null, null);
+	}
+
+	private ScanJobService.JobStatus await(String id) throws InterruptedException {
+		for (int i = 0; i < 500; i++) {
+			ScanJobService.JobStatus status = jobs.status(id);
+			if (status.finishedAt() != null) {
+				return status;
+			}
+			Thread.sleep(10);
+		}
+		throw new AssertionError("Job " + id + " did not finish");
+	}
+
+	@Test
+	void pagesResultsWithCursor() throws Exception {
+		for (int i = 0; i < 5; i++) {
+			Files.writeString(tempDir.resolve("file" + i + ".txt"), "x");
+		}
+		ScanJobService.JobStatus submitted = jobs.submit(request("*.txt"), 0);
+		ScanJobService.JobStatus finished = await(submitted.id());
+		assertEquals(ScanJobService.State.COMPLETED, finished.state());
+		assertEquals(5, finished.resultCount());
+
+		List<String> collected = new ArrayList<>();
+		String cursor = null;
+		do {
+			// Запрошено 100, но страница ограничена maxPageSize
+			ScanJobService.ResultPage page = jobs.results(submitted.id(), cursor, 100);
+			assertEquals(5, page.total());
+			collected.addAll(page.items());
+			cursor = page.nextCursor();
+		} while (cursor != null);
+		assertEquals(service.scan(tempDir.toString(), "*.txt", "1", null, null, null, null, null), collected);
+		assertThrows(IllegalArgumentException.class, () -> jobs.results(submitted.id(), "9", 1));
+	}
+
+	@Test
+	void runsHigherPriorityFirstAndCancelsQueuedJobs() throws Exception {
+		for (int i = 0; i < 3; i++) {
+			Files.writeString(tempDir.resolve("a" + i + ".txt"), "x");
+		}
+		// Единственный слот сканирования занят: первое задание ждёт слот,
+		// остальные копятся в очереди заданий
+		Semaphore scanSlots = (Semaphore) ReflectionTestUtils.getField(service, "scanSlots");
+		scanSlots.acquire();
+		ScanJobService.JobStatus blocker = jobs.submit(request("*"), 0);
+		ScanJobService.JobStatus low = jobs.submit(request("*.txt"), 0);
+		ScanJobService.JobStatus high = jobs.submit(request("a0.*"), 5);
+		ScanJobService.JobStatus cancelled = jobs.submit(request("a1.*"), 9);
+
+		assertEquals(ScanJobService.State.CANCELLED, jobs.cancel(cancelled.id()).state());
+		assertEquals(ScanJobService.State.QUEUED, jobs.status(low.id()).state());
+		scanSlots.release();
+		await(blocker.id());
+		ScanJobService.JobStatus lowDone = await(low.id());
+		ScanJobService.JobStatus highDone = await(high.id());
+
+		assertEquals(ScanJobService.State.COMPLETED, highDone.state());
+		assertFalse(highDone.startedAt().isAfter(lowDone.startedAt()));
+		assertNull(jobs.status(cancelled.id()).startedAt());
+		assertThrows(IllegalStateException.class, () -> jobs.results(cancelled.id(), null, 10));
+		assertThrows(IllegalArgumentException.class, () -> jobs.submit(new ScanJobService.JobRequest(tempDir.toString(), "*", "1",
+				null, null, null, null, null, ScanQuery.WalkOptions.NONE, 5, 5, null), 0));
+	}
+}
@@ -0,0 +1,159 @@
+package com.azati.file_scanner;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ScanResultsTest {
+
+	private static final Path ROOT = Paths.get("/data/scan").toAbsolutePath();
+
+	@Test
+	void sortsLikeStringPathsAcrossWorkers() throws Exception {
+		Random random = new Random(7);
+		String[] parts = {"a", "b", "a.b", "a-b", "logs", "файлы"};
+		List<String> expected = new ArrayList<>();
+		for (int i = 0; i < 20000; i++) {
+			StringBuilder path = new StringBuilder(ROOT.toString());
+			int depth = random.nextInt(4);
+			for (int d = 0; d < depth; d++) {
+				path.append('/').append(parts[random.nextInt(parts.length)]);
+			}
+			path.append('/').append(parts[random.nextInt(parts.length)]).append(i).append(".txt");
+			expected.add(path.toString());
+		}
+
+		ResultCollector collector = new ResultCollector(ROOT);
+		// Несколько потоков: у каждого свой буфер и свои каталоги
+		ForkJoinPool pool = new ForkJoinPool(4);
+		pool.submit(() -> IntStream.range(0, expected.size()).parallel()
+				.forEach(i -> collector.accept(expected.get(i), i, i))).get();
+		ScanResults results = collector.build(pool);
+		pool.shutdown();
+		pool.awaitTermination(1, TimeUnit.SECONDS);
+
+		expected.sort(null);
+		assertEquals(expected, new ArrayList<>(results));
+		int index = expected.indexOf(ROOT + "/logs1.txt");
+		if (index >= 0) {
+			assertEquals(1, results.fileSize(index));
+			assertEquals("logs1.txt", results.fileName(index));
+		}
+	}
+
+	@Test
+	void keepsOnlyPathsUnlessMetadataIsRequested() {
+		ResultCollector collector = new ResultCollector(ROOT, false, false);
+		collector.accept(ROOT + "/b/2.txt", 20, 2);
+		collector.accept(ROOT + "/a/1.txt", 10, 1);
+		collector.accept(ROOT + "/b/1.txt", 30, 3);
+		collector.accept(ROOT + "/a-b/3.txt", 40, 4);
+		ScanResults results = collector.build(ForkJoinPool.commonPool());
+
+		assertEquals(List.of(ROOT + "/a-b/3.txt", ROOT + "/a/1.txt", ROOT + "/b/1.txt", ROOT + "/b/2.txt"), results);
+		assertFalse(results.hasSizes());
+		assertFalse(results.has(ScanResults.Order.MODIFIED));
+		assertThrows(IllegalStateException.class, () -> results.fileSize(0));
+		assertThrows(IllegalStateException.class, () -> results.top(1, ScanResults.Order.SIZE));
+		// Подмножества делят сжатое хранилище
+		assertEquals(List.of(ROOT + "/a/1.txt", ROOT + "/b/1.txt"), results.select(i -> results.fileName(i).equals("1.txt")));
+		assertEquals(List.of(ROOT + "/a-b/3.txt", ROOT + "/a/1.txt"), results.limit(2));
+
+		ResultCollector withSizes = new ResultCollector(ROOT, true, false);
+		withSizes.accept(ROOT + "/b/2.txt", 20, 2);
+		withSizes.accept(ROOT + "/a/1.txt", 10, 1);
+		ScanResults sized = withSizes.build(ForkJoinPool.commonPool());
+		assertEquals(10, sized.fileSize(0));
+		assertEquals(List.of(ROOT + "/b/2.txt"), sized.top(1, ScanResults.Order.SIZE));
+	}
+
+	@Test
+	void writesEscapedJson() throws Exception {
+		ResultCollector collector = new ResultCollector(ROOT);
+		collector.accept(ROOT + "/dir/quote\"back\\slash.txt", 1, 1);
+		collector.accept(ROOT + "/отчёт.txt", 2, 2);
+		ScanResults results = collector.build(ForkJoinPool.commonPool());
+
+		ObjectMapper mapper = new ObjectMapper();
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		JsonGenerator generator = mapper.getFactory().createGenerator(out);
+		results.writeJson(generator);
+		generator.flush();
+
+		String[] parsed = mapper.readValue(out.toByteArray(), String[].class);
+		assertEquals(Arrays.asList(parsed), new ArrayList<>(results));
+		assertEquals(results.select(i -> results.fileSize(i) == 2), List.of(ROOT + "/отчёт.txt"));
+	}
+
+	@Test
+	void topKFromWorkerHeapsMatchesTopOfFullResult() throws Exception {
+		Random random = new Random(11);
+		List<String> paths = new ArrayList<>();
+		long[] sizes = new long[5000];
+		for (int i = 0; i < sizes.length; i++) {
+			paths.add(ROOT + "/d" + random.nextInt(20) + "/f" + i);
+			// Повторяющиеся размеры: при равенстве порядок задаёт путь
+			sizes[i] = random.nextInt(500);
+		}
+		ResultCollector collector = new ResultCollector(ROOT);
+		TopKCollector top = new TopKCollector(ROOT, 25, ScanResults.Order.SIZE);
+		ForkJoinPool pool = new ForkJoinPool(4);
+		pool.submit(() -> IntStream.range(0, sizes.length).parallel().forEach(i -> {
+			collector.accept(paths.get(i), sizes[i], i);
+			top.accept(paths.get(i), sizes[i], i);
+		})).get();
+
+		ScanResults full = collector.build(pool);
+		ScanResults expected = full.top(25, ScanResults.Order.SIZE);
+		assertEquals(new ArrayList<>(expected), new ArrayList<>(top.build(pool)));
+		pool.shutdown();
+
+		for (int i = 1; i < expected.size(); i++) {
+			assertTrue(expected.fileSize(i - 1) >= expected.fileSize(i));
+		}
+		assertEquals(full.subList(0, 10), full.limit(10));
+	}
+
+	@Test
+	void aggregatesCountsAndHistograms() {
+		long now = System.currentTimeMillis();
+		ScanAggregate aggregate = new ScanAggregate();
+		aggregate.accept(ROOT + "/a", 10, now);
+		aggregate.accept(ROOT + "/b", 2048, now - 3L * 24 * 60 * 60 * 1000);
+		aggregate.accept(ROOT + "/c", 5L << 20, now - 400L * 24 * 60 * 60 * 1000);
+
+		ScanAggregate.Summary summary = aggregate.summary("id", false);
+		assertEquals(3, summary.files());
+		assertEquals(10 + 2048 + (5L << 20), summary.totalBytes());
+		assertEquals(10, summary.minSize());
+		assertEquals(1L, summary.sizeHistogram().get("<1KB"));
+		assertEquals(1L, summary.sizeHistogram().get("1KB-16KB"));
+		assertEquals(1L, summary.sizeHistogram().get("4MB-64MB"));
+		assertEquals(1L, summary.ageHistogram().get("<1d"));
+		assertEquals(1L, summary.ageHistogram().get("1d-7d"));
+		assertEquals(1L, summary.ageHistogram().get(">=1y"));
+	}
+
+	@Test
+	void comparesPathsByCodePoint() {
+		assertTrue(ScanResults.comparePaths("/a/b", "/a-b") > 0);
+		assertTrue(ScanResults.comparePaths("/a/�", "/a/😀") < 0);
+		assertEquals(0, ScanResults.comparePaths("/a", "/a"));
+	}
+}
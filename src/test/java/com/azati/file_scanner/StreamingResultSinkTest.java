@@ -0,0 +1,139 @@
+package com.azati.file_scanner;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class StreamingResultSinkTest {
+
+	@TempDir
+	Path tempDir;
+
+	private final ObjectMapper objectMapper = new ObjectMapper();
+	private FileScanService service;
+	private ScanJobService jobs;
+	private FileScanController controller;
+
+	@BeforeEach
+	void setUp() throws IOException {
+		ScanCache cache = new ScanCache();
+		ReflectionTestUtils.setField(cache, "cacheTtlMillis", 0L);
+		ReflectionTestUtils.setField(cache, "maxWeight", 1000L);
+		ScanMetrics metrics = new ScanMetrics(new SimpleMeterRegistry());
+		// Один поток в пуле обхода: припаркованный медленным клиентом, он остановил бы всё
+		service = new FileScanService(cache, new FileIndex(), new ContentIndex(), new ConcurrencyTuner(),
+				metrics, 1, 4, 0, 2, 2, 16);
+		jobs = new ScanJobService(service, metrics, 1, 10);
+		controller = new FileScanController(service, new ClusterCoordinator(service), jobs, objectMapper);
+		ReflectionTestUtils.setField(controller, "streamBufferSize", 1);
+		ReflectionTestUtils.setField(controller, "streamStallTimeoutMillis", 0L);
+
+		for (int dir = 0; dir < 4; dir++) {
+			Path sub = Files.createDirectories(tempDir.resolve("d" + dir));
+			for (int file = 0; file < 25; file++) {
+				Files.writeString(sub.resolve(file + ".txt"), "x");
+			}
+		}
+	}
+
+	@AfterEach
+	void tearDown() {
+		jobs.shutdown();
+		service.shutdown();
+	}
+
+	private StreamingResponseBody stream(String mask) throws InterruptedException {
+		return controller.scanFilesStream(tempDir.toString(), mask, "1", null, null, null, null, null,
+				null, null, null, false, false, null, null).getBody();
+	}
+
+	@Test
+	void writesOneJsonLinePerFileAndSummary() throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		stream("*.txt").writeTo(out);
+
+		String[] lines = out.toString(StandardCharsets.UTF_8).split("\n");
+		assertEquals(101, lines.length);
+		List<String> paths = new ArrayList<>();
+		for (int i = 0; i < 100; i++) {
+			paths.add(objectMapper.readTree(lines[i]).get("path").asText());
+		}
+		paths.sort(null);
+		assertEquals(service.scan(tempDir.toString(), "*.txt", "1", null, null, null, null, null), paths);
+		JsonNode summary = objectMapper.readTree(lines[100]);
+		assertEquals("summary", summary.get("type").asText());
+		assertEquals(100, summary.get("count").asLong());
+		assertEquals(false, summary.get("interrupted").asBoolean());
+	}
+
+	@Test
+	void clientDisconnectInterruptsScan() throws Exception {
+		StreamingResponseBody body = stream("*.txt");
+		OutputStream broken = new OutputStream() {
+			@Override
+			public void write(int b) throws IOException {
+				throw new IOException("Broken pipe");
+			}
+		};
+		assertThrows(IOException.class, () -> body.writeTo(broken));
+
+		assertTimeoutPreemptively(Duration.ofSeconds(30), () -> {
+			while (!service.getActiveScanIds().isEmpty()) {
+				Thread.sleep(10);
+			}
+		});
+	}
+
+	@Test
+	void slowReaderDoesNotBlockParallelScan() throws Exception {
+		// Клиент не читает: очередь на один путь сразу заполнена
+		StreamingResultSink unread = new StreamingResultSink(1);
+		ScanSession stalled = service.startStreamingScan(null, tempDir.toString(), "*.txt", "1", null, null, null, null, null,
+				ScanQuery.WalkOptions.NONE, null, unread);
+		try {
+			while (!unread.hasBuffered()) {
+				Thread.sleep(10);
+			}
+			ScanResults results = assertTimeoutPreemptively(Duration.ofSeconds(30),
+					() -> service.scan(tempDir.toString(), "0.txt", "1", null, null, null, null, null));
+			assertEquals(4, results.size());
+			assertTrue(service.getActiveScanIds().contains(stalled.id));
+		} finally {
+			stalled.interrupt();
+		}
+	}
+
+	@Test
+	void stalledClientIsDroppedAfterTimeout() throws Exception {
+		StreamingResultSink unread = new StreamingResultSink(1, 200);
+		ScanSession stalled = service.startStreamingScan(null, tempDir.toString(), "*.txt", "1", null, null, null, null, null,
+				ScanQuery.WalkOptions.NONE, null, unread);
+		assertTimeoutPreemptively(Duration.ofSeconds(30), () -> {
+			while (service.getActiveScanIds().contains(stalled.id)) {
+				Thread.sleep(10);
+			}
+		});
+		assertTrue(stalled.interrupted);
+	}
+}
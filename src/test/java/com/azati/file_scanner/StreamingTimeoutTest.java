@@ -0,0 +1,108 @@
+package com.azati.file_scanner;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.boot.web.embedded.tomcat.TomcatServletWebServerFactory;
+import org.springframework.boot.web.server.WebServerFactoryCustomizer;
+import org.springframework.context.annotation.Bean;
+
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+class StreamingTimeoutTest {
+
+	// Таймаут асинхронного запроса у коннектора по умолчанию 30 с; укорачиваем, чтобы не ждать
+	private static final long CONNECTOR_ASYNC_TIMEOUT_MS = 1000;
+	private static final long SCAN_DURATION_MS = 3000;
+
+	@TestConfiguration
+	static class ShortConnectorTimeout {
+		@Bean
+		WebServerFactoryCustomizer<TomcatServletWebServerFactory> shortAsyncTimeout() {
+			return factory -> factory.addConnectorCustomizers(connector -> connector.setAsyncTimeout(CONNECTOR_ASYNC_TIMEOUT_MS));
+		}
+	}
+
+	@LocalServerPort
+	int port;
+
+	@TempDir
+	Path tempDir;
+
+	private final ObjectMapper objectMapper = new ObjectMapper();
+	private final HttpClient client = HttpClient.newHttpClient();
+
+	// Поиск по содержимому ждёт на fifo, пока в него не напишут: скан идёт столько, сколько нужно тесту
+	private Path blockedFifo(String dir) throws Exception {
+		Path fifo = Files.createDirectories(tempDir.resolve(dir)).resolve("pipe.txt");
+		int exitCode;
+		try {
+			exitCode = new ProcessBuilder("mkfifo", fifo.toString()).start().waitFor();
+		} catch (Exception e) {
+			exitCode = -1;
+		}
+		assumeTrue(exitCode == 0, "mkfifo is not available");
+		CompletableFuture.runAsync(() -> {
+			try {
+				Thread.sleep(SCAN_DURATION_MS);
+				try (OutputStream out = Files.newOutputStream(fifo)) {
+					out.write("needle".getBytes(StandardCharsets.UTF_8));
+				}
+			} catch (Exception e) {
+				throw new IllegalStateException(e);
+			}
+		});
+		return fifo.getParent();
+	}
+
+	private JsonNode lastLine(String query) throws Exception {
+		HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/scan/" + query))
+				.timeout(Duration.ofSeconds(60)).build();
+		long startedAt = System.nanoTime();
+		String body = client.send(request, HttpResponse.BodyHandlers.ofString()).body();
+		assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt) >= SCAN_DURATION_MS);
+		String[] lines = body.split("\n");
+		return objectMapper.readTree(lines[lines.length - 1]);
+	}
+
+	private static String encode(Path path) {
+		return URLEncoder.encode(path.toString(), StandardCharsets.UTF_8);
+	}
+
+	@Test
+	void streamOutlivesAsyncTimeoutAndEndsWithSummary() throws Exception {
+		Path root = blockedFifo("stream");
+		JsonNode summary = lastLine("stream?path=" + encode(root) + "&mask=*.txt&containsText=needle");
+		assertEquals("summary", summary.get("type").asText());
+		assertEquals(1, summary.get("count").asLong());
+	}
+
+	@Test
+	void distributedStreamOutlivesAsyncTimeoutAndEndsWithSummary() throws Exception {
+		Path root = blockedFifo("distributed");
+		JsonNode summary = lastLine("distributed?path=" + encode(root) + "&mask=*.txt&containsText=needle");
+		assertEquals("summary", summary.get("type").asText());
+		assertEquals(1, summary.get("count").asLong());
+		assertEquals(0, summary.get("failures").size());
+	}
+}
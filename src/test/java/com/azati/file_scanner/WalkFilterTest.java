@@ -0,0 +1,99 @@
+package com.azati.file_scanner;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class WalkFilterTest {
+
+	private static final Path ROOT = Paths.get("/data/repo").toAbsolutePath();
+
+	@TempDir
+	Path tempDir;
+
+	private static WalkFilter filter(List<String> excludes, Integer minDepth, Integer maxDepth) {
+		return new WalkFilter(ScanQuery.of(ROOT.toString(), "*", null, null, null, null, null,
+				ScanQuery.WalkOptions.of(excludes, minDepth, maxDepth, false, false)));
+	}
+
+	@Test
+	void matchesGitignoreStylePatterns() {
+		WalkFilter filter = filter(List.of("node_modules", "*.BAK", "/build", "docs/**/tmp", "cache/"), null, null);
+
+		// Имя без "/" — на любой глубине, без учёта регистра
+		assertFalse(filter.entersDirectory(ROOT.resolve("web/app/node_modules")));
+		assertFalse(filter.acceptsFile(ROOT.resolve("old/report.bak")));
+		// С "/" — только от корня
+		assertFalse(filter.entersDirectory(ROOT.resolve("build")));
+		assertTrue(filter.entersDirectory(ROOT.resolve("src/build")));
+		assertFalse(filter.entersDirectory(ROOT.resolve("docs/tmp")));
+		assertFalse(filter.entersDirectory(ROOT.resolve("docs/a/b/tmp")));
+		// "/" в конце — только директории
+		assertFalse(filter.entersDirectory(ROOT.resolve("src/cache")));
+		assertTrue(filter.acceptsFile(ROOT.resolve("src/cache")));
+		// В индексе обхода нет: проверяются и директории файла
+		assertFalse(filter.acceptsIndexedFile(ROOT.resolve("web/node_modules/lib/index.js")));
+		assertTrue(filter.acceptsIndexedFile(ROOT.resolve("web/src/index.js")));
+	}
+
+	@Test
+	void limitsDepth() {
+		WalkFilter filter = filter(List.of(), 2, 3);
+
+		assertFalse(filter.acceptsFile(ROOT.resolve("top.txt")));
+		assertTrue(filter.acceptsFile(ROOT.resolve("a/nested.txt")));
+		assertTrue(filter.entersDirectory(ROOT.resolve("a/b")));
+		// Файлы из a/b/c были бы на глубине 4
+		assertFalse(filter.entersDirectory(ROOT.resolve("a/b/c")));
+		assertFalse(filter.acceptsIndexedFile(ROOT.resolve("a/b/c/deep.txt")));
+	}
+
+	@Test
+	void walkOptionsArePartOfCacheKey() {
+		ScanCache cache = new ScanCache();
+		ScanQuery plain = ScanQuery.of(ROOT.toString(), "*", null, null, null, null, null);
+		ScanQuery excluded = ScanQuery.of(ROOT.toString(), "*", null, null, null, null, null,
+				ScanQuery.WalkOptions.of(List.of(".git", " ", ".git"), 1, null, false, false));
+
+		assertEquals(List.of(".git"), excluded.walk.excludes());
+		assertNotEquals(cache.generateCacheKey(plain), cache.generateCacheKey(excluded));
+		assertFalse(plain.covers(excluded));
+		assertEquals(cache.generateCacheKey(plain), cache.generateCacheKey(ScanQuery.of(ROOT.toString(), "*", null, null, null, null, null,
+				ScanQuery.WalkOptions.of(null, 1, null, false, false))));
+	}
+
+	@Test
+	void prunesSubtreesAndSurvivesSymlinkCycles() throws Exception {
+		Files.createDirectories(tempDir.resolve("src/node_modules/pkg"));
+		Files.createDirectories(tempDir.resolve(".git/objects"));
+		Files.writeString(tempDir.resolve("src/main.js"), "x");
+		Files.writeString(tempDir.resolve("src/node_modules/pkg/index.js"), "x");
+		Files.writeString(tempDir.resolve(".git/objects/blob.js"), "x");
+		Files.createSymbolicLink(tempDir.resolve("src/loop"), tempDir);
+
+		ScanCache cache = new ScanCache();
+		ReflectionTestUtils.setField(cache, "cacheTtlMillis", 0L);
+		ReflectionTestUtils.setField(cache, "maxWeight", 1000L);
+		FileScanService service = new FileScanService(cache, new FileIndex(), new ContentIndex(), new ConcurrencyTuner(),
+				new ScanMetrics(new SimpleMeterRegistry()), 2, 4, 0, 2, 2, 16);
+		try {
+			List<String> found = service.scan(null, tempDir.toString(), "*.js", "2", null, null, null, null, null,
+					ScanQuery.WalkOptions.of(List.of("node_modules", ".git/"), null, null, true, true), null, null, null);
+			// Ссылка на корень ведёт в цикл: обход её пропускает
+			assertEquals(List.of(tempDir.resolve("src/main.js").toString()), found);
+		} finally {
+			service.shutdown();
+		}
+	}
+}